@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dmm4j;
+
+/**
+ * Runs asynchronous tasks. Implementations are chosen with the async.dispatcherImpl property and
+ * must provide a public constructor taking {@link dmm4j.conf.Configuration}.
+ *
+ * @author Hiroki Uchida
+ */
+public interface Dispatcher {
+  void invokeLater(Runnable task);
+
+  /**
+   * Stops the dispatcher. Tasks which are {@link java.util.concurrent.Future}s and will never run
+   * are cancelled.
+   */
+  void shutdown();
+}
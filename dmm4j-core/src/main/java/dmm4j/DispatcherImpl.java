@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dmm4j;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dmm4j.conf.Configuration;
+import dmm4j.log.Logger;
+
+/**
+ * Default Dispatcher running tasks on a fixed pool of async.numThreads threads.
+ *
+ * @author Hiroki Uchida
+ */
+final class DispatcherImpl implements Dispatcher {
+  private static final Logger logger = Logger.getLogger(DispatcherImpl.class);
+  private final ExecutorService executorService;
+  private final Thread shutdownHook;
+
+  public DispatcherImpl(final Configuration conf) {
+    executorService =
+        Executors.newFixedThreadPool(Math.max(1, conf.getAsyncNumThreads()), new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setName(String.format("Dmm4J Async Dispatcher[%d]", count.getAndIncrement()));
+            thread.setDaemon(conf.isDaemonEnabled());
+            return thread;
+          }
+        });
+    shutdownHook = new Thread() {
+      @Override
+      public void run() {
+        executorService.shutdown();
+      }
+    };
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  @Override
+  public void invokeLater(Runnable task) {
+    executorService.execute(task);
+  }
+
+  @Override
+  public void shutdown() {
+    removeShutdownHook(shutdownHook);
+    executorService.shutdown();
+    try {
+      if (!executorService.awaitTermination(5000, TimeUnit.MILLISECONDS)) {
+        cancel(executorService.shutdownNow());
+      }
+    } catch (InterruptedException e) {
+      logger.warn(e.getMessage());
+      cancel(executorService.shutdownNow());
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  static void removeShutdownHook(Thread hook) {
+    try {
+      Runtime.getRuntime().removeShutdownHook(hook);
+    } catch (IllegalStateException ignore) {
+      // the JVM is already shutting down
+    }
+  }
+
+  /**
+   * cancels the tasks dropped by shutdownNow() which are Futures, so that nobody waits for them
+   */
+  static void cancel(List<Runnable> dropped) {
+    for (Runnable task : dropped) {
+      if (task instanceof Future) {
+        ((Future<?>) task).cancel(false);
+      }
+    }
+  }
+}
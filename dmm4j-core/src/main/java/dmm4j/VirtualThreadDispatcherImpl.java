@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dmm4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dmm4j.conf.Configuration;
+import dmm4j.log.Logger;
+
+/**
+ * Dispatcher running each task on its own virtual thread.<br>
+ * The number of tasks running at the same time is capped by async.numThreads with a semaphore
+ * acquired inside the virtual thread, so queued tasks cost a parked virtual thread rather than a
+ * platform thread stack. On runtimes without virtual threads this falls back to a fixed pool of
+ * async.numThreads platform threads.<br>
+ * Enable with async.dispatcherImpl=dmm4j.VirtualThreadDispatcherImpl
+ *
+ * @author Hiroki Uchida
+ */
+final class VirtualThreadDispatcherImpl implements Dispatcher {
+  private static final Logger logger = Logger.getLogger(VirtualThreadDispatcherImpl.class);
+  private final ExecutorService executorService;
+  private final Semaphore permits;
+  private final Thread shutdownHook;
+
+  public VirtualThreadDispatcherImpl(final Configuration conf) {
+    int concurrency = Math.max(1, conf.getAsyncNumThreads());
+    ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+    if (virtualThreadExecutor != null) {
+      executorService = virtualThreadExecutor;
+      permits = new Semaphore(concurrency);
+      logger.debug("Dispatching on virtual threads, concurrency: ", String.valueOf(concurrency));
+    } else {
+      executorService = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r);
+          thread.setName(String.format("Dmm4J Async Dispatcher[%d]", count.getAndIncrement()));
+          thread.setDaemon(conf.isDaemonEnabled());
+          return thread;
+        }
+      });
+      // the pool size already bounds the concurrency
+      permits = null;
+      logger.debug("Virtual threads are not available, dispatching on platform threads");
+    }
+    shutdownHook = new Thread() {
+      @Override
+      public void run() {
+        executorService.shutdown();
+      }
+    };
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /**
+   * @return Executors.newVirtualThreadPerTaskExecutor() if the runtime supports it, otherwise null
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (NoSuchMethodException ignore) {
+    } catch (Exception e) {
+      // preview feature not enabled or otherwise unusable
+      logger.debug("Virtual threads are unusable: ", String.valueOf(e));
+    }
+    return null;
+  }
+
+  @Override
+  public void invokeLater(final Runnable task) {
+    if (permits == null) {
+      executorService.execute(task);
+      return;
+    }
+    executorService.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          permits.acquire();
+        } catch (InterruptedException ie) {
+          // shutdownNow() while waiting for a permit, so the task will never run
+          Thread.currentThread().interrupt();
+          if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+          } else {
+            logger.warn("Dropped a task interrupted while waiting for a permit");
+          }
+          return;
+        }
+        try {
+          task.run();
+        } finally {
+          permits.release();
+        }
+      }
+    });
+  }
+
+  @Override
+  public void shutdown() {
+    DispatcherImpl.removeShutdownHook(shutdownHook);
+    executorService.shutdown();
+    try {
+      if (!executorService.awaitTermination(5000, TimeUnit.MILLISECONDS)) {
+        DispatcherImpl.cancel(executorService.shutdownNow());
+      }
+    } catch (InterruptedException e) {
+      logger.warn(e.getMessage());
+      DispatcherImpl.cancel(executorService.shutdownNow());
+      Thread.currentThread().interrupt();
+    }
+  }
+}
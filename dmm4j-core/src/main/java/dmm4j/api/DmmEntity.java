@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.api;
+
+/**
+ * Base of the named entities DMM items refer to, such as genres, makers and actresses.<br>
+ * The same shape is returned by the search APIs and inside the item information of items.
+ *
+ * @author nikuyoshi
+ */
+public abstract class DmmEntity implements java.io.Serializable {
+  private static final long serialVersionUID = -1538425707614417310L;
+
+  long id = -1;
+  String name;
+  String ruby;
+  String listUrl;
+
+  DmmEntity() {}
+
+  /**
+   * @return the id, or -1 if not available
+   */
+  public long getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the reading of the name in hiragana, or null if not available
+   */
+  public String getRuby() {
+    return ruby;
+  }
+
+  /**
+   * @return URL of the item list for this entity, or null if not available
+   */
+  public String getListUrl() {
+    return listUrl;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (o == null || getClass() != o.getClass())
+      return false;
+
+    DmmEntity that = (DmmEntity) o;
+
+    if (id != that.id)
+      return false;
+    if (name != null ? !name.equals(that.name) : that.name != null)
+      return false;
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = (int) (id ^ (id >>> 32));
+    result = 31 * result + (name != null ? name.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" + "id=" + id + ", name='" + name + '\'' + ", ruby='"
+        + ruby + '\'' + '}';
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.api;
+
+/**
+ * A floor of the FloorList API, along with the service and site it belongs to.
+ *
+ * @author nikuyoshi
+ */
+public final class Floor implements java.io.Serializable {
+  private static final long serialVersionUID = 6917245093714880915L;
+
+  long id = -1;
+  String name;
+  String code;
+  String serviceName;
+  String serviceCode;
+  String siteName;
+  String siteCode;
+
+  Floor() {}
+
+  public long getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the floor code, as given as the floor parameter of the ItemList API
+   */
+  public String getCode() {
+    return code;
+  }
+
+  public String getServiceName() {
+    return serviceName;
+  }
+
+  /**
+   * @return the service code, as given as the service parameter of the ItemList API
+   */
+  public String getServiceCode() {
+    return serviceCode;
+  }
+
+  public String getSiteName() {
+    return siteName;
+  }
+
+  /**
+   * @return the site code, either "DMM.com" or "FANZA"
+   */
+  public String getSiteCode() {
+    return siteCode;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (o == null || getClass() != o.getClass())
+      return false;
+
+    Floor that = (Floor) o;
+
+    if (id != that.id)
+      return false;
+    if (code != null ? !code.equals(that.code) : that.code != null)
+      return false;
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = (int) (id ^ (id >>> 32));
+    result = 31 * result + (code != null ? code.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "Floor{" + "id=" + id + ", name='" + name + '\'' + ", code='" + code + '\''
+        + ", serviceCode='" + serviceCode + '\'' + ", siteCode='" + siteCode + '\'' + '}';
+  }
+}
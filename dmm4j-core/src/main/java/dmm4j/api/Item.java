@@ -0,0 +1,218 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.api;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An item of the ItemList API. Fields missing from the response are null, or -1 for numbers.
+ *
+ * @author nikuyoshi
+ */
+public final class Item implements java.io.Serializable {
+  private static final long serialVersionUID = 5528613806407145326L;
+
+  String serviceCode;
+  String serviceName;
+  String floorCode;
+  String floorName;
+  String categoryName;
+  String contentId;
+  String productId;
+  String title;
+  String volume;
+  int reviewCount = -1;
+  double reviewAverage = -1;
+  String url;
+  String urlSp;
+  String affiliateUrl;
+  String affiliateUrlSp;
+  String listImageUrl;
+  String smallImageUrl;
+  String largeImageUrl;
+  Prices prices;
+  String date;
+  List<Genre> genres = Collections.emptyList();
+  List<Series> series = Collections.emptyList();
+  List<Maker> makers = Collections.emptyList();
+  List<Actress> actresses = Collections.emptyList();
+  List<Author> authors = Collections.emptyList();
+  String janCode;
+  String makerProduct;
+  String isbn;
+  String stock;
+
+  Item() {}
+
+  public String getServiceCode() {
+    return serviceCode;
+  }
+
+  public String getServiceName() {
+    return serviceName;
+  }
+
+  public String getFloorCode() {
+    return floorCode;
+  }
+
+  public String getFloorName() {
+    return floorName;
+  }
+
+  public String getCategoryName() {
+    return categoryName;
+  }
+
+  public String getContentId() {
+    return contentId;
+  }
+
+  public String getProductId() {
+    return productId;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  /**
+   * @return running time or number of pages, as the API returns it
+   */
+  public String getVolume() {
+    return volume;
+  }
+
+  public int getReviewCount() {
+    return reviewCount;
+  }
+
+  public double getReviewAverage() {
+    return reviewAverage;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public String getUrlSp() {
+    return urlSp;
+  }
+
+  public String getAffiliateUrl() {
+    return affiliateUrl;
+  }
+
+  public String getAffiliateUrlSp() {
+    return affiliateUrlSp;
+  }
+
+  public String getListImageUrl() {
+    return listImageUrl;
+  }
+
+  public String getSmallImageUrl() {
+    return smallImageUrl;
+  }
+
+  public String getLargeImageUrl() {
+    return largeImageUrl;
+  }
+
+  /**
+   * @return the prices, or null if not available
+   */
+  public Prices getPrices() {
+    return prices;
+  }
+
+  /**
+   * @return release date in the form "yyyy-MM-dd HH:mm:ss", Japan time
+   */
+  public String getDate() {
+    return date;
+  }
+
+  public List<Genre> getGenres() {
+    return genres;
+  }
+
+  public List<Series> getSeries() {
+    return series;
+  }
+
+  public List<Maker> getMakers() {
+    return makers;
+  }
+
+  public List<Actress> getActresses() {
+    return actresses;
+  }
+
+  public List<Author> getAuthors() {
+    return authors;
+  }
+
+  public String getJanCode() {
+    return janCode;
+  }
+
+  public String getMakerProduct() {
+    return makerProduct;
+  }
+
+  public String getIsbn() {
+    return isbn;
+  }
+
+  public String getStock() {
+    return stock;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (o == null || getClass() != o.getClass())
+      return false;
+
+    Item that = (Item) o;
+
+    if (serviceCode != null ? !serviceCode.equals(that.serviceCode) : that.serviceCode != null)
+      return false;
+    if (floorCode != null ? !floorCode.equals(that.floorCode) : that.floorCode != null)
+      return false;
+    if (contentId != null ? !contentId.equals(that.contentId) : that.contentId != null)
+      return false;
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = serviceCode != null ? serviceCode.hashCode() : 0;
+    result = 31 * result + (floorCode != null ? floorCode.hashCode() : 0);
+    result = 31 * result + (contentId != null ? contentId.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "Item{" + "serviceCode='" + serviceCode + '\'' + ", floorCode='" + floorCode + '\''
+        + ", contentId='" + contentId + '\'' + ", title='" + title + '\'' + ", prices=" + prices
+        + ", date='" + date + '\'' + '}';
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.api;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import dmm4j.DmmException;
+import dmm4j.http.HttpClient;
+import dmm4j.http.HttpRequestTemplate;
+import dmm4j.http.RateLimiter;
+
+/**
+ * Exports all items matching an {@link ItemQuery} by fetching pages concurrently.<br>
+ * The first page is fetched to learn the total count, then the remaining offset windows, up to
+ * {@link ItemQuery#MAX_OFFSET}, are requested with at most {@link #parallelism(int)} pages in
+ * flight or waiting for delivery at a time. Requests go through
+ * {@link HttpClient#requestAsync(dmm4j.http.HttpRequest)} and so honour http.rateLimit of the
+ * client; a further limiter for the export alone can be set with {@link #rateLimiter(RateLimiter)}.
+ * The requests run on the async dispatcher, so async.numThreads should be at least the
+ * parallelism, or the VirtualThreadDispatcherImpl used.
+ * <pre>
+ * int count = new ItemExporter(client, query).parallelism(8).export(new Consumer&lt;Item&gt;() {
+ *   public void accept(Item item) {
+ *     ...
+ *   }
+ * });
+ * </pre>
+ *
+ * @author nikuyoshi
+ */
+public final class ItemExporter {
+  private final HttpClient client;
+  private final ItemQuery query;
+  private int parallelism = 4;
+  private boolean ordered = true;
+  private RateLimiter rateLimiter = null;
+
+  /**
+   * @param client client issuing the requests
+   * @param query the search, whose hits and offset give the page size and the first item
+   */
+  public ItemExporter(HttpClient client, ItemQuery query) {
+    this.client = client;
+    this.query = query;
+  }
+
+  /**
+   * @param pages number of pages fetched concurrently, 4 by default
+   * @return this
+   */
+  public ItemExporter parallelism(int pages) {
+    if (pages < 1) {
+      throw new IllegalArgumentException("pages must be positive: " + pages);
+    }
+    this.parallelism = pages;
+    return this;
+  }
+
+  /**
+   * @param ordered true to deliver items in the order of the search, the default, or false to
+   *        deliver pages as they arrive
+   * @return this
+   */
+  public ItemExporter ordered(boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  /**
+   * @param rateLimiter limiter each page request of this export waits for, or null for none
+   * @return this
+   */
+  public ItemExporter rateLimiter(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+    return this;
+  }
+
+  /**
+   * Fetches all pages and passes each item to the consumer on the calling thread.
+   *
+   * @param consumer receives the items
+   * @return number of items exported
+   * @throws DmmException when a page cannot be fetched, after the pages in flight are cancelled
+   */
+  public int export(Consumer<? super Item> consumer) throws DmmException {
+    int hits = query.getHits();
+    HttpRequestTemplate template = query.toTemplate(client.getRequestHeaders());
+    acquire();
+    ItemList first = ItemPager.fetch(client, template, query.getOffset());
+    int count = deliver(first, consumer);
+    if (first.size() < hits) {
+      return count;
+    }
+    int last = Math.min(first.getTotalCount() >= 0 ? first.getTotalCount() : Integer.MAX_VALUE,
+        ItemQuery.MAX_OFFSET);
+    int nextOffset = query.getOffset() + hits;
+    ArrayDeque<CompletableFuture<ItemList>> pending =
+        new ArrayDeque<CompletableFuture<ItemList>>();
+    try {
+      while (nextOffset <= last || !pending.isEmpty()) {
+        while (pending.size() < parallelism && nextOffset <= last) {
+          acquire();
+          pending.add(ItemPager.fetchAsync(client, template, nextOffset));
+          nextOffset += hits;
+        }
+        if (ordered) {
+          ItemList page = await(pending.poll());
+          count += deliver(page, consumer);
+          if (page.size() < hits) {
+            // the result shrank while exporting
+            last = 0;
+          }
+        } else {
+          await(CompletableFuture.anyOf(pending.toArray(new CompletableFuture<?>[pending.size()])));
+          Iterator<CompletableFuture<ItemList>> iterator = pending.iterator();
+          while (iterator.hasNext()) {
+            CompletableFuture<ItemList> future = iterator.next();
+            if (future.isDone()) {
+              iterator.remove();
+              ItemList page = await(future);
+              count += deliver(page, consumer);
+              if (page.size() < hits) {
+                last = 0;
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      for (CompletableFuture<ItemList> future : pending) {
+        future.cancel(false);
+      }
+    }
+    return count;
+  }
+
+  private void acquire() throws DmmException {
+    if (rateLimiter != null) {
+      try {
+        rateLimiter.acquire();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new DmmException("Interrupted while waiting for the rate limiter", ie);
+      }
+    }
+  }
+
+  private static int deliver(ItemList page, Consumer<? super Item> consumer) {
+    for (Item item : page) {
+      consumer.accept(item);
+    }
+    return page.size();
+  }
+
+  private static <T> T await(CompletableFuture<T> future) throws DmmException {
+    try {
+      return future.join();
+    } catch (CompletionException ce) {
+      Throwable cause = ce.getCause() != null ? ce.getCause() : ce;
+      if (cause instanceof DmmException) {
+        throw (DmmException) cause;
+      }
+      throw new DmmException(cause.getMessage(), cause);
+    } catch (CancellationException ce) {
+      throw new DmmException("Page request cancelled", ce);
+    }
+  }
+}
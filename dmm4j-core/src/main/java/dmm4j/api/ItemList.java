@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.api;
+
+import java.util.List;
+
+/**
+ * One page of the ItemList API.
+ *
+ * @author nikuyoshi
+ */
+public final class ItemList extends ResultList<Item> {
+  private static final long serialVersionUID = -7718049410582167335L;
+
+  ItemList() {}
+
+  public List<Item> getItems() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "ItemList{" + "status=" + status + ", resultCount=" + resultCount + ", totalCount="
+        + totalCount + ", firstPosition=" + firstPosition + ", items=" + list + '}';
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.api;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import dmm4j.DmmException;
+import dmm4j.http.HttpClient;
+import dmm4j.http.HttpParameter;
+import dmm4j.http.HttpRequest;
+import dmm4j.http.HttpRequestTemplate;
+import dmm4j.http.HttpResponse;
+
+/**
+ * Iterates over all items matching an {@link ItemQuery}, fetching pages as they are reached.<br>
+ * Only the page being consumed and up to {@link #prefetch(int)} pages requested ahead are held,
+ * so a whole floor can be exported in constant memory. Pages ahead are requested with
+ * {@link HttpClient#requestAsync(HttpRequest)} once the total count is known from the first page,
+ * and never beyond the last item or {@link ItemQuery#MAX_OFFSET}.
+ * <pre>
+ * for (Item item : new ItemPager(client, query).prefetch(1)) {
+ *   ...
+ * }
+ * </pre>
+ * Failures are thrown from the iterator as IllegalStateException with the DmmException as cause.
+ *
+ * @author nikuyoshi
+ */
+public final class ItemPager implements Iterable<Item> {
+  private final HttpClient client;
+  private final ItemQuery query;
+  private int prefetch = 0;
+
+  /**
+   * @param client client issuing the requests
+   * @param query the search, whose hits and offset give the page size and the first item
+   */
+  public ItemPager(HttpClient client, ItemQuery query) {
+    this.client = client;
+    this.query = query;
+  }
+
+  /**
+   * @param pages number of pages to request ahead of the one being consumed, 0 by default
+   * @return this
+   */
+  public ItemPager prefetch(int pages) {
+    if (pages < 0) {
+      throw new IllegalArgumentException("pages must not be negative: " + pages);
+    }
+    this.prefetch = pages;
+    return this;
+  }
+
+  @Override
+  public Iterator<Item> iterator() {
+    return new PageIterator();
+  }
+
+  /**
+   * @return sequential stream of the items, cancelling pages requested ahead when closed
+   */
+  public Stream<Item> stream() {
+    final PageIterator iterator = new PageIterator();
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(new Runnable() {
+          @Override
+          public void run() {
+            iterator.cancel();
+          }
+        });
+  }
+
+  /**
+   * requests the page at offset on the calling thread
+   */
+  static ItemList fetch(HttpClient client, HttpRequestTemplate template, int offset)
+      throws DmmException {
+    return ModelBinder.readItemList(client.request(requestFor(template, offset)));
+  }
+
+  /**
+   * requests the page at offset, binding it on the thread completing the response
+   */
+  static CompletableFuture<ItemList> fetchAsync(HttpClient client, HttpRequestTemplate template,
+      int offset) {
+    return client.requestAsync(requestFor(template, offset)).thenApply(
+        new Function<HttpResponse, ItemList>() {
+          @Override
+          public ItemList apply(HttpResponse res) {
+            try {
+              return ModelBinder.readItemList(res);
+            } catch (DmmException de) {
+              throw new CompletionException(de);
+            }
+          }
+        });
+  }
+
+  private static HttpRequest requestFor(HttpRequestTemplate template, int offset) {
+    return template.newRequest(new HttpParameter("offset", offset));
+  }
+
+  private final class PageIterator implements Iterator<Item> {
+    private final ArrayDeque<CompletableFuture<ItemList>> pending =
+        new ArrayDeque<CompletableFuture<ItemList>>();
+    private final HttpRequestTemplate template = query.toTemplate(client.getRequestHeaders());
+    private final int hits = query.getHits();
+    /**
+     * offset of the next page to request
+     */
+    private int nextOffset = query.getOffset();
+    /**
+     * position of the last item to request, known once the first page arrives
+     */
+    private int last = Integer.MAX_VALUE;
+    private ItemList page = null;
+    private int index = 0;
+
+    @Override
+    public boolean hasNext() {
+      while (page == null || index >= page.size()) {
+        // let the consumed page go before waiting for the next one
+        page = null;
+        if (pending.isEmpty()) {
+          if (!hasMorePages()) {
+            return false;
+          }
+          page = fetch(nextOffset);
+          nextOffset += hits;
+        } else {
+          page = await(pending.poll());
+        }
+        index = 0;
+        updateLast(nextOffset - (pending.size() + 1) * hits, page);
+        if (page.isEmpty()) {
+          cancel();
+          return false;
+        }
+        while (pending.size() < prefetch && hasMorePages()) {
+          pending.add(fetchAsync(client, template, nextOffset));
+          nextOffset += hits;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public Item next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return page.get(index++);
+    }
+
+    void cancel() {
+      CompletableFuture<ItemList> future;
+      while ((future = pending.poll()) != null) {
+        future.cancel(false);
+      }
+      last = 0;
+    }
+
+    private boolean hasMorePages() {
+      return nextOffset <= last && nextOffset <= ItemQuery.MAX_OFFSET;
+    }
+
+    /**
+     * narrows down the last position with the counts of the page at offset
+     */
+    private void updateLast(int offset, ItemList list) {
+      if (list.getTotalCount() >= 0) {
+        last = Math.min(last, list.getTotalCount());
+      }
+      if (list.size() < hits) {
+        last = Math.min(last, offset + list.size() - 1);
+      }
+    }
+
+    private ItemList fetch(int offset) {
+      try {
+        return ItemPager.fetch(client, template, offset);
+      } catch (DmmException de) {
+        cancel();
+        throw new IllegalStateException(de.getMessage(), de);
+      }
+    }
+
+    private ItemList await(CompletableFuture<ItemList> future) {
+      try {
+        return future.join();
+      } catch (CompletionException ce) {
+        cancel();
+        Throwable cause = ce.getCause() != null ? ce.getCause() : ce;
+        throw new IllegalStateException(cause.getMessage(), cause);
+      }
+    }
+  }
+}
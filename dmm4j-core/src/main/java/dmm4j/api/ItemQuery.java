@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.api;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dmm4j.http.HttpParameter;
+import dmm4j.http.HttpRequestTemplate;
+import dmm4j.http.RequestMethod;
+
+/**
+ * Parameters of an ItemList API search.
+ * <pre>
+ * ItemQuery query = new ItemQuery(apiId, affiliateId).site("FANZA").service("digital")
+ *     .floor("videoa").sort("date");
+ * </pre>
+ *
+ * @author nikuyoshi
+ */
+public final class ItemQuery implements java.io.Serializable {
+  private static final long serialVersionUID = -3529018471170525947L;
+
+  public static final String DEFAULT_URL = "https://api.dmm.com/affiliate/v3/ItemList";
+  /**
+   * largest number of items per page the API accepts
+   */
+  public static final int MAX_HITS = 100;
+  /**
+   * largest offset the API accepts
+   */
+  public static final int MAX_OFFSET = 50000;
+
+  private String url = DEFAULT_URL;
+  private final Map<String, String> params = new LinkedHashMap<String, String>();
+  private int hits = MAX_HITS;
+  private int offset = 1;
+
+  /**
+   * @param apiId API ID
+   * @param affiliateId affiliate ID, ending with 990 to 999
+   */
+  public ItemQuery(String apiId, String affiliateId) {
+    params.put("api_id", apiId);
+    params.put("affiliate_id", affiliateId);
+  }
+
+  /**
+   * @param site "DMM.com" or "FANZA"
+   * @return this
+   */
+  public ItemQuery site(String site) {
+    return param("site", site);
+  }
+
+  public ItemQuery service(String service) {
+    return param("service", service);
+  }
+
+  public ItemQuery floor(String floor) {
+    return param("floor", floor);
+  }
+
+  /**
+   * @param sort one of "rank", "price", "-price", "date", "review" and "match"
+   * @return this
+   */
+  public ItemQuery sort(String sort) {
+    return param("sort", sort);
+  }
+
+  public ItemQuery keyword(String keyword) {
+    return param("keyword", keyword);
+  }
+
+  /**
+   * Narrows the search down to items of an actress, genre, maker, series or author.
+   *
+   * @param article one of "actress", "author", "genre", "series" and "maker"
+   * @param articleId id of the entity
+   * @return this
+   */
+  public ItemQuery article(String article, long articleId) {
+    param("article", article);
+    return param("article_id", String.valueOf(articleId));
+  }
+
+  /**
+   * @param gteDate earliest release date, in the form "yyyy-MM-ddTHH:mm:ss"
+   * @return this
+   */
+  public ItemQuery gteDate(String gteDate) {
+    return param("gte_date", gteDate);
+  }
+
+  /**
+   * @param lteDate latest release date, in the form "yyyy-MM-ddTHH:mm:ss"
+   * @return this
+   */
+  public ItemQuery lteDate(String lteDate) {
+    return param("lte_date", lteDate);
+  }
+
+  /**
+   * @param hits number of items per page, up to {@link #MAX_HITS}
+   * @return this
+   */
+  public ItemQuery hits(int hits) {
+    if (hits < 1 || hits > MAX_HITS) {
+      throw new IllegalArgumentException("hits must be between 1 and " + MAX_HITS + ": " + hits);
+    }
+    this.hits = hits;
+    return this;
+  }
+
+  /**
+   * @param offset 1 based position of the first item, up to {@link #MAX_OFFSET}
+   * @return this
+   */
+  public ItemQuery offset(int offset) {
+    if (offset < 1 || offset > MAX_OFFSET) {
+      throw new IllegalArgumentException("offset must be between 1 and " + MAX_OFFSET + ": "
+          + offset);
+    }
+    this.offset = offset;
+    return this;
+  }
+
+  /**
+   * Sets any other parameter, or removes it when value is null.
+   *
+   * @param name name of the parameter
+   * @param value value of the parameter
+   * @return this
+   */
+  public ItemQuery param(String name, String value) {
+    if (value == null) {
+      params.remove(name);
+    } else {
+      params.put(name, value);
+    }
+    return this;
+  }
+
+  /**
+   * @param url URL of the ItemList API, {@link #DEFAULT_URL} by default
+   * @return this
+   */
+  public ItemQuery url(String url) {
+    this.url = url;
+    return this;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public int getHits() {
+    return hits;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * @param name name of the parameter
+   * @return the value, or null if not set
+   */
+  public String getParam(String name) {
+    return params.get(name);
+  }
+
+  /**
+   * @param requestHeaders request headers of the client
+   * @return template of the page requests, to be given the offset of each page
+   */
+  HttpRequestTemplate toTemplate(Map<String, String> requestHeaders) {
+    List<HttpParameter> list = new ArrayList<HttpParameter>(params.size() + 2);
+    for (Map.Entry<String, String> entry : params.entrySet()) {
+      list.add(new HttpParameter(entry.getKey(), entry.getValue()));
+    }
+    list.add(new HttpParameter("hits", hits));
+    list.add(new HttpParameter("output", "json"));
+    return new HttpRequestTemplate(RequestMethod.GET, url,
+        list.toArray(new HttpParameter[list.size()]), requestHeaders);
+  }
+
+  @Override
+  public String toString() {
+    return "ItemQuery{" + "url='" + url + '\'' + ", params=" + params + ", hits=" + hits
+        + ", offset=" + offset + '}';
+  }
+}
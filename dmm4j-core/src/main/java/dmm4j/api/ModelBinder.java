@@ -0,0 +1,572 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import dmm4j.DmmException;
+import dmm4j.http.HttpResponse;
+import dmm4j.json.JSONException;
+import dmm4j.json.JSONReader;
+
+/**
+ * Binds DMM API responses to the model classes straight from the token stream, without building a
+ * JSONObject tree or using reflection.<br>
+ * Unknown fields are skipped. Numbers may be given as numbers or strings, values which cannot be
+ * read as a number are bound as -1, as {@code ParseUtil} does.
+ *
+ * @author nikuyoshi
+ */
+public final class ModelBinder {
+  private ModelBinder() {
+    // should never be instantiated
+    throw new AssertionError();
+  }
+
+  /**
+   * reads one element of an array
+   */
+  private interface Binder<T> {
+    T read(JSONReader reader) throws JSONException;
+  }
+
+  private static final Binder<Actress> ACTRESS = new Binder<Actress>() {
+    @Override
+    public Actress read(JSONReader reader) throws JSONException {
+      return readEntity(reader, new Actress(), "actress_id");
+    }
+  };
+
+  private static final Binder<Genre> GENRE = new Binder<Genre>() {
+    @Override
+    public Genre read(JSONReader reader) throws JSONException {
+      return readEntity(reader, new Genre(), "genre_id");
+    }
+  };
+
+  private static final Binder<Maker> MAKER = new Binder<Maker>() {
+    @Override
+    public Maker read(JSONReader reader) throws JSONException {
+      return readEntity(reader, new Maker(), "maker_id");
+    }
+  };
+
+  private static final Binder<Series> SERIES = new Binder<Series>() {
+    @Override
+    public Series read(JSONReader reader) throws JSONException {
+      return readEntity(reader, new Series(), "series_id");
+    }
+  };
+
+  private static final Binder<Author> AUTHOR = new Binder<Author>() {
+    @Override
+    public Author read(JSONReader reader) throws JSONException {
+      return readEntity(reader, new Author(), "author_id");
+    }
+  };
+
+  private static final Binder<Prices.Delivery> DELIVERY = new Binder<Prices.Delivery>() {
+    @Override
+    public Prices.Delivery read(JSONReader reader) throws JSONException {
+      Prices.Delivery delivery = new Prices.Delivery();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("type".equals(name)) {
+          delivery.type = string(reader);
+        } else if ("price".equals(name)) {
+          delivery.price = string(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return delivery;
+    }
+  };
+
+  private static final Binder<Item> ITEM = new Binder<Item>() {
+    @Override
+    public Item read(JSONReader reader) throws JSONException {
+      return readItem(reader);
+    }
+  };
+
+  /**
+   * @param reader reader over an ItemList API response
+   * @return the page of items
+   * @throws DmmException when the response is malformed or reports an error
+   */
+  public static ItemList readItemList(JSONReader reader) throws DmmException {
+    return readResultList(reader, new ItemList(), "items", ITEM);
+  }
+
+  public static ResultList<Actress> readActresses(JSONReader reader) throws DmmException {
+    return readResultList(reader, new ResultList<Actress>(), "actress", ACTRESS);
+  }
+
+  public static ResultList<Genre> readGenres(JSONReader reader) throws DmmException {
+    return readResultList(reader, new ResultList<Genre>(), "genre", GENRE);
+  }
+
+  public static ResultList<Maker> readMakers(JSONReader reader) throws DmmException {
+    return readResultList(reader, new ResultList<Maker>(), "maker", MAKER);
+  }
+
+  public static ResultList<Series> readSeries(JSONReader reader) throws DmmException {
+    return readResultList(reader, new ResultList<Series>(), "series", SERIES);
+  }
+
+  public static ResultList<Author> readAuthors(JSONReader reader) throws DmmException {
+    return readResultList(reader, new ResultList<Author>(), "author", AUTHOR);
+  }
+
+  /**
+   * @param reader reader over a FloorList API response
+   * @return all floors of all services and sites
+   * @throws DmmException when the response is malformed or reports an error
+   */
+  public static List<Floor> readFloors(JSONReader reader) throws DmmException {
+    List<Floor> floors = new ArrayList<Floor>();
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("result".equals(reader.nextName())) {
+          int status = -1;
+          String message = null;
+          reader.beginObject();
+          while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("status".equals(name)) {
+              status = (int) longValue(reader);
+            } else if ("message".equals(name)) {
+              message = string(reader);
+            } else if ("site".equals(name)) {
+              readSites(reader, floors);
+            } else {
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+          checkStatus(status, message);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    } catch (JSONException jsone) {
+      throw new DmmException(jsone.getMessage(), jsone);
+    }
+    return floors;
+  }
+
+  /**
+   * Reads an ItemList API response and closes the reader.
+   *
+   * @param res the response
+   * @return the page of items
+   * @throws DmmException when the response is malformed or reports an error
+   */
+  public static ItemList readItemList(HttpResponse res) throws DmmException {
+    JSONReader reader = res.asJSONReader();
+    try {
+      return readItemList(reader);
+    } finally {
+      close(reader);
+    }
+  }
+
+  /**
+   * Reads a FloorList API response and closes the reader.
+   *
+   * @param res the response
+   * @return all floors of all services and sites
+   * @throws DmmException when the response is malformed or reports an error
+   */
+  public static List<Floor> readFloors(HttpResponse res) throws DmmException {
+    JSONReader reader = res.asJSONReader();
+    try {
+      return readFloors(reader);
+    } finally {
+      close(reader);
+    }
+  }
+
+  private static <T, L extends ResultList<T>> L readResultList(JSONReader reader, L list,
+      String listName, Binder<T> binder) throws DmmException {
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("result".equals(reader.nextName())) {
+          readResult(reader, list, listName, binder);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    } catch (JSONException jsone) {
+      throw new DmmException(jsone.getMessage(), jsone);
+    }
+    return list;
+  }
+
+  private static <T> void readResult(JSONReader reader, ResultList<T> list, String listName,
+      Binder<T> binder) throws JSONException, DmmException {
+    String message = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("status".equals(name)) {
+        list.status = (int) longValue(reader);
+      } else if ("result_count".equals(name)) {
+        list.resultCount = (int) longValue(reader);
+      } else if ("total_count".equals(name)) {
+        list.totalCount = (int) longValue(reader);
+      } else if ("first_position".equals(name)) {
+        list.firstPosition = (int) longValue(reader);
+      } else if ("message".equals(name)) {
+        message = string(reader);
+      } else if (listName.equals(name)) {
+        readArray(reader, binder, list.list);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkStatus(list.status, message);
+  }
+
+  private static void checkStatus(int status, String message) throws DmmException {
+    if (status != -1 && status != 200) {
+      throw new DmmException(message != null ? message : "status " + status, null, status);
+    }
+  }
+
+  private static void readSites(JSONReader reader, List<Floor> floors) throws JSONException {
+    reader.beginArray();
+    while (reader.hasNext()) {
+      String siteName = null;
+      String siteCode = null;
+      int first = floors.size();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("name".equals(name)) {
+          siteName = string(reader);
+        } else if ("code".equals(name)) {
+          siteCode = string(reader);
+        } else if ("service".equals(name)) {
+          readServices(reader, floors);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      // the site name may come after its services
+      for (int i = first; i < floors.size(); i++) {
+        floors.get(i).siteName = siteName;
+        floors.get(i).siteCode = siteCode;
+      }
+    }
+    reader.endArray();
+  }
+
+  private static void readServices(JSONReader reader, List<Floor> floors) throws JSONException {
+    reader.beginArray();
+    while (reader.hasNext()) {
+      String serviceName = null;
+      String serviceCode = null;
+      int first = floors.size();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if ("name".equals(name)) {
+          serviceName = string(reader);
+        } else if ("code".equals(name)) {
+          serviceCode = string(reader);
+        } else if ("floor".equals(name)) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            floors.add(readFloor(reader));
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      for (int i = first; i < floors.size(); i++) {
+        floors.get(i).serviceName = serviceName;
+        floors.get(i).serviceCode = serviceCode;
+      }
+    }
+    reader.endArray();
+  }
+
+  private static Floor readFloor(JSONReader reader) throws JSONException {
+    Floor floor = new Floor();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("id".equals(name)) {
+        floor.id = longValue(reader);
+      } else if ("name".equals(name)) {
+        floor.name = string(reader);
+      } else if ("code".equals(name)) {
+        floor.code = string(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return floor;
+  }
+
+  private static Item readItem(JSONReader reader) throws JSONException {
+    Item item = new Item();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("service_code".equals(name)) {
+        item.serviceCode = string(reader);
+      } else if ("service_name".equals(name)) {
+        item.serviceName = string(reader);
+      } else if ("floor_code".equals(name)) {
+        item.floorCode = string(reader);
+      } else if ("floor_name".equals(name)) {
+        item.floorName = string(reader);
+      } else if ("category_name".equals(name)) {
+        item.categoryName = string(reader);
+      } else if ("content_id".equals(name)) {
+        item.contentId = string(reader);
+      } else if ("product_id".equals(name)) {
+        item.productId = string(reader);
+      } else if ("title".equals(name)) {
+        item.title = string(reader);
+      } else if ("volume".equals(name)) {
+        item.volume = string(reader);
+      } else if ("review".equals(name)) {
+        readReview(reader, item);
+      } else if ("URL".equals(name)) {
+        item.url = string(reader);
+      } else if ("URLsp".equals(name)) {
+        item.urlSp = string(reader);
+      } else if ("affiliateURL".equals(name)) {
+        item.affiliateUrl = string(reader);
+      } else if ("affiliateURLsp".equals(name)) {
+        item.affiliateUrlSp = string(reader);
+      } else if ("imageURL".equals(name)) {
+        readImageUrl(reader, item);
+      } else if ("prices".equals(name)) {
+        item.prices = readPrices(reader);
+      } else if ("date".equals(name)) {
+        item.date = string(reader);
+      } else if ("iteminfo".equals(name)) {
+        readItemInfo(reader, item);
+      } else if ("jancode".equals(name)) {
+        item.janCode = string(reader);
+      } else if ("maker_product".equals(name)) {
+        item.makerProduct = string(reader);
+      } else if ("isbn".equals(name)) {
+        item.isbn = string(reader);
+      } else if ("stock".equals(name)) {
+        item.stock = string(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return item;
+  }
+
+  private static void readReview(JSONReader reader, Item item) throws JSONException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("count".equals(name)) {
+        item.reviewCount = (int) longValue(reader);
+      } else if ("average".equals(name)) {
+        item.reviewAverage = doubleValue(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private static void readImageUrl(JSONReader reader, Item item) throws JSONException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("list".equals(name)) {
+        item.listImageUrl = string(reader);
+      } else if ("small".equals(name)) {
+        item.smallImageUrl = string(reader);
+      } else if ("large".equals(name)) {
+        item.largeImageUrl = string(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private static Prices readPrices(JSONReader reader) throws JSONException {
+    Prices prices = new Prices();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("price".equals(name)) {
+        prices.price = string(reader);
+      } else if ("list_price".equals(name)) {
+        prices.listPrice = string(reader);
+      } else if ("deliveries".equals(name)) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          if ("delivery".equals(reader.nextName())) {
+            prices.deliveries = readArray(reader, DELIVERY, new ArrayList<Prices.Delivery>());
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return prices;
+  }
+
+  private static void readItemInfo(JSONReader reader, Item item) throws JSONException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("genre".equals(name)) {
+        item.genres = readArray(reader, GENRE, new ArrayList<Genre>());
+      } else if ("series".equals(name)) {
+        item.series = readArray(reader, SERIES, new ArrayList<Series>());
+      } else if ("maker".equals(name)) {
+        item.makers = readArray(reader, MAKER, new ArrayList<Maker>());
+      } else if ("actress".equals(name)) {
+        item.actresses = readArray(reader, ACTRESS, new ArrayList<Actress>());
+      } else if ("author".equals(name)) {
+        item.authors = readArray(reader, AUTHOR, new ArrayList<Author>());
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private static <T extends DmmEntity> T readEntity(JSONReader reader, T entity, String idName)
+      throws JSONException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("id".equals(name) || idName.equals(name)) {
+        entity.id = longValue(reader);
+      } else if ("name".equals(name)) {
+        entity.name = string(reader);
+      } else if ("ruby".equals(name)) {
+        entity.ruby = string(reader);
+      } else if ("list_url".equals(name)) {
+        entity.listUrl = string(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return entity;
+  }
+
+  /**
+   * reads an array into list, or a single element as the API returns lists of one that way at
+   * times
+   */
+  private static <T> List<T> readArray(JSONReader reader, Binder<T> binder, List<T> list)
+      throws JSONException {
+    switch (reader.peek()) {
+      case BEGIN_ARRAY:
+        reader.beginArray();
+        while (reader.hasNext()) {
+          list.add(binder.read(reader));
+        }
+        reader.endArray();
+        break;
+      case BEGIN_OBJECT:
+        list.add(binder.read(reader));
+        break;
+      default:
+        reader.skipValue();
+    }
+    return list;
+  }
+
+  private static String string(JSONReader reader) throws JSONException {
+    switch (reader.peek()) {
+      case STRING:
+      case NUMBER:
+        return reader.nextString();
+      case BOOLEAN:
+        return String.valueOf(reader.nextBoolean());
+      case NULL:
+        reader.nextNull();
+        return null;
+      default:
+        reader.skipValue();
+        return null;
+    }
+  }
+
+  private static long longValue(JSONReader reader) throws JSONException {
+    if (reader.peek() == JSONReader.Token.NUMBER) {
+      return reader.nextLong();
+    }
+    String str = string(reader);
+    if (str == null || "".equals(str)) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(str);
+    } catch (NumberFormatException nfe) {
+      return -1;
+    }
+  }
+
+  private static double doubleValue(JSONReader reader) throws JSONException {
+    if (reader.peek() == JSONReader.Token.NUMBER) {
+      return reader.nextDouble();
+    }
+    String str = string(reader);
+    if (str == null || "".equals(str)) {
+      return -1;
+    }
+    try {
+      return Double.parseDouble(str);
+    } catch (NumberFormatException nfe) {
+      return -1;
+    }
+  }
+
+  private static void close(JSONReader reader) {
+    try {
+      reader.close();
+    } catch (IOException ignore) {
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.api;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prices of an item. Prices are kept as the text the API returns, which may be a range such as
+ * "300~".
+ *
+ * @author nikuyoshi
+ */
+public final class Prices implements java.io.Serializable {
+  private static final long serialVersionUID = 4790128264917437320L;
+
+  String price;
+  String listPrice;
+  List<Delivery> deliveries = Collections.emptyList();
+
+  Prices() {}
+
+  public String getPrice() {
+    return price;
+  }
+
+  /**
+   * @return the list price, or null if not available
+   */
+  public String getListPrice() {
+    return listPrice;
+  }
+
+  /**
+   * @return the prices per delivery type, such as stream or download
+   */
+  public List<Delivery> getDeliveries() {
+    return deliveries;
+  }
+
+  @Override
+  public String toString() {
+    return "Prices{" + "price='" + price + '\'' + ", listPrice='" + listPrice + '\''
+        + ", deliveries=" + deliveries + '}';
+  }
+
+  /**
+   * Price of one delivery type.
+   */
+  public static final class Delivery implements java.io.Serializable {
+    private static final long serialVersionUID = -2712406186207447812L;
+
+    String type;
+    String price;
+
+    Delivery() {}
+
+    public String getType() {
+      return type;
+    }
+
+    public String getPrice() {
+      return price;
+    }
+
+    @Override
+    public String toString() {
+      return "Delivery{" + "type='" + type + '\'' + ", price='" + price + '\'' + '}';
+    }
+  }
+}
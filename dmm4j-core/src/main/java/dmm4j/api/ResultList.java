@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.api;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * One page of results of a search API, along with the counts the API returns.
+ *
+ * @param <T> type of the results
+ * @author nikuyoshi
+ */
+public class ResultList<T> extends AbstractList<T> implements RandomAccess,
+    java.io.Serializable {
+  private static final long serialVersionUID = 3140219564390628581L;
+
+  int status = -1;
+  int resultCount = -1;
+  int totalCount = -1;
+  int firstPosition = -1;
+  final List<T> list = new ArrayList<T>();
+
+  ResultList() {}
+
+  @Override
+  public T get(int index) {
+    return list.get(index);
+  }
+
+  @Override
+  public int size() {
+    return list.size();
+  }
+
+  /**
+   * @return the status the API returned, 200 on success
+   */
+  public int getStatus() {
+    return status;
+  }
+
+  /**
+   * @return number of results on this page
+   */
+  public int getResultCount() {
+    return resultCount;
+  }
+
+  /**
+   * @return number of results matching the query, or -1 if not available
+   */
+  public int getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * @return the 1 based position of the first result on this page, or -1 if not available
+   */
+  public int getFirstPosition() {
+    return firstPosition;
+  }
+}
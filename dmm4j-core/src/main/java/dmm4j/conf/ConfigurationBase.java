@@ -40,6 +40,27 @@ class ConfigurationBase implements Configuration, java.io.Serializable {
     private int httpStreamingReadTimeout = 40 * 1000;
     private int httpRetryCount = 0;
     private int httpRetryIntervalSeconds = 5;
+    private int httpRetryMaxIntervalSeconds = 60;
+    private int httpRetryMaxElapsedSeconds = 300;
+    private String httpRetryPolicy = "dmm4j.http.FixedIntervalRetryPolicy";
+    private int httpMaxConnectionsPerRoute = 5;
+    private int httpMaxTotalConnections = 20;
+    private int httpConnectionIdleTimeout = 30 * 1000;
+    private int httpConnectionValidateAfterInactivity = 2 * 1000;
+    private double httpRateLimit = 0;
+    private int httpRateLimitBurst = 1;
+    private boolean httpRateLimitBlocking = true;
+    private String httpRateLimits = null;
+    private boolean httpCacheEnabled = false;
+    private int httpCacheMaxEntries = 1000;
+    private int httpCacheTTLSeconds = 300;
+    private String httpCacheTTLs = null;
+    private String httpCacheDirectory = null;
+    private long httpCacheMaxBytes = 64L * 1024 * 1024;
+    private boolean httpConditionalGetEnabled = false;
+    private boolean httpCoalescingEnabled = false;
+    private boolean httpCompactJSONEnabled = false;
+    private boolean httpLazyJSONEnabled = false;
 
     private String oAuthConsumerKey = null;
     private String oAuthConsumerSecret = null;
@@ -162,6 +183,116 @@ class ConfigurationBase implements Configuration, java.io.Serializable {
             return httpRetryIntervalSeconds;
         }
 
+        @Override
+        public int getHttpRetryMaxIntervalSeconds() {
+            return httpRetryMaxIntervalSeconds;
+        }
+
+        @Override
+        public int getHttpRetryMaxElapsedSeconds() {
+            return httpRetryMaxElapsedSeconds;
+        }
+
+        @Override
+        public String getHttpRetryPolicy() {
+            return httpRetryPolicy;
+        }
+
+        @Override
+        public int getHttpMaxConnectionsPerRoute() {
+            return httpMaxConnectionsPerRoute;
+        }
+
+        @Override
+        public int getHttpMaxTotalConnections() {
+            return httpMaxTotalConnections;
+        }
+
+        @Override
+        public int getHttpConnectionIdleTimeout() {
+            return httpConnectionIdleTimeout;
+        }
+
+        @Override
+        public int getHttpConnectionValidateAfterInactivity() {
+            return httpConnectionValidateAfterInactivity;
+        }
+
+        @Override
+        public double getHttpRateLimit() {
+            return httpRateLimit;
+        }
+
+        @Override
+        public int getHttpRateLimitBurst() {
+            return httpRateLimitBurst;
+        }
+
+        @Override
+        public boolean isHttpRateLimitBlocking() {
+            return httpRateLimitBlocking;
+        }
+
+        @Override
+        public String getHttpRateLimits() {
+            return httpRateLimits;
+        }
+
+        @Override
+        public boolean isHttpCacheEnabled() {
+            return httpCacheEnabled;
+        }
+
+        @Override
+        public int getHttpCacheMaxEntries() {
+            return httpCacheMaxEntries;
+        }
+
+        @Override
+        public int getHttpCacheTTLSeconds() {
+            return httpCacheTTLSeconds;
+        }
+
+        @Override
+        public String getHttpCacheTTLs() {
+            return httpCacheTTLs;
+        }
+
+        @Override
+        public String getHttpCacheDirectory() {
+            return httpCacheDirectory;
+        }
+
+        @Override
+        public long getHttpCacheMaxBytes() {
+            return httpCacheMaxBytes;
+        }
+
+        @Override
+        public boolean isHttpConditionalGetEnabled() {
+            return httpConditionalGetEnabled;
+        }
+
+        @Override
+        public boolean isHttpCoalescingEnabled() {
+            return httpCoalescingEnabled;
+        }
+
+        @Override
+        public boolean isHttpCompactJSONEnabled() {
+            return httpCompactJSONEnabled;
+        }
+
+        @Override
+        public boolean isHttpLazyJSONEnabled() {
+            return httpLazyJSONEnabled;
+        }
+
+        @Override
+        public Configuration getConfiguration() {
+            return ConfigurationBase.this;
+        }
+
         @Override
         public boolean isPrettyDebugEnabled() {
             return prettyDebug;
@@ -388,6 +519,90 @@ class ConfigurationBase implements Configuration, java.io.Serializable {
         this.httpRetryIntervalSeconds = retryIntervalSeconds;
     }
 
+    protected final void setHttpRetryMaxIntervalSeconds(int retryMaxIntervalSeconds) {
+        this.httpRetryMaxIntervalSeconds = retryMaxIntervalSeconds;
+    }
+
+    protected final void setHttpRetryMaxElapsedSeconds(int retryMaxElapsedSeconds) {
+        this.httpRetryMaxElapsedSeconds = retryMaxElapsedSeconds;
+    }
+
+    protected final void setHttpRetryPolicy(String retryPolicy) {
+        this.httpRetryPolicy = retryPolicy;
+    }
+
+    protected final void setHttpMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.httpMaxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    protected final void setHttpMaxTotalConnections(int maxTotalConnections) {
+        this.httpMaxTotalConnections = maxTotalConnections;
+    }
+
+    protected final void setHttpConnectionIdleTimeout(int connectionIdleTimeout) {
+        this.httpConnectionIdleTimeout = connectionIdleTimeout;
+    }
+
+    protected final void setHttpConnectionValidateAfterInactivity(int validateAfterInactivity) {
+        this.httpConnectionValidateAfterInactivity = validateAfterInactivity;
+    }
+
+    protected final void setHttpRateLimit(double requestsPerSecond) {
+        this.httpRateLimit = requestsPerSecond;
+    }
+
+    protected final void setHttpRateLimitBurst(int burst) {
+        this.httpRateLimitBurst = burst;
+    }
+
+    protected final void setHttpRateLimitBlocking(boolean blocking) {
+        this.httpRateLimitBlocking = blocking;
+    }
+
+    protected final void setHttpRateLimits(String rateLimits) {
+        this.httpRateLimits = rateLimits;
+    }
+
+    protected final void setHttpCacheEnabled(boolean enabled) {
+        this.httpCacheEnabled = enabled;
+    }
+
+    protected final void setHttpCacheMaxEntries(int maxEntries) {
+        this.httpCacheMaxEntries = maxEntries;
+    }
+
+    protected final void setHttpCacheTTLSeconds(int ttlSeconds) {
+        this.httpCacheTTLSeconds = ttlSeconds;
+    }
+
+    protected final void setHttpCacheTTLs(String ttls) {
+        this.httpCacheTTLs = ttls;
+    }
+
+    protected final void setHttpCacheDirectory(String directory) {
+        this.httpCacheDirectory = directory;
+    }
+
+    protected final void setHttpCacheMaxBytes(long maxBytes) {
+        this.httpCacheMaxBytes = maxBytes;
+    }
+
+    protected final void setHttpConditionalGetEnabled(boolean enabled) {
+        this.httpConditionalGetEnabled = enabled;
+    }
+
+    protected final void setHttpCoalescingEnabled(boolean enabled) {
+        this.httpCoalescingEnabled = enabled;
+    }
+
+    protected final void setHttpCompactJSONEnabled(boolean enabled) {
+        this.httpCompactJSONEnabled = enabled;
+    }
+
+    protected final void setHttpLazyJSONEnabled(boolean enabled) {
+        this.httpLazyJSONEnabled = enabled;
+    }
+
     // oauth related setter/getters
 
     @Override
@@ -732,6 +947,29 @@ class ConfigurationBase implements Configuration, java.io.Serializable {
         if (debug != that.debug) return false;
         if (httpRetryCount != that.httpRetryCount) return false;
         if (httpRetryIntervalSeconds != that.httpRetryIntervalSeconds) return false;
+        if (httpRetryMaxIntervalSeconds != that.httpRetryMaxIntervalSeconds) return false;
+        if (httpRetryMaxElapsedSeconds != that.httpRetryMaxElapsedSeconds) return false;
+        if (httpMaxConnectionsPerRoute != that.httpMaxConnectionsPerRoute) return false;
+        if (httpMaxTotalConnections != that.httpMaxTotalConnections) return false;
+        if (httpConnectionIdleTimeout != that.httpConnectionIdleTimeout) return false;
+        if (httpConnectionValidateAfterInactivity != that.httpConnectionValidateAfterInactivity) return false;
+        if (Double.compare(that.httpRateLimit, httpRateLimit) != 0) return false;
+        if (httpRateLimitBurst != that.httpRateLimitBurst) return false;
+        if (httpRateLimitBlocking != that.httpRateLimitBlocking) return false;
+        if (httpRateLimits != null ? !httpRateLimits.equals(that.httpRateLimits) : that.httpRateLimits != null)
+            return false;
+        if (httpCacheEnabled != that.httpCacheEnabled) return false;
+        if (httpCacheMaxEntries != that.httpCacheMaxEntries) return false;
+        if (httpCacheTTLSeconds != that.httpCacheTTLSeconds) return false;
+        if (httpCacheTTLs != null ? !httpCacheTTLs.equals(that.httpCacheTTLs) : that.httpCacheTTLs != null)
+            return false;
+        if (httpCacheDirectory != null ? !httpCacheDirectory.equals(that.httpCacheDirectory) : that.httpCacheDirectory != null)
+            return false;
+        if (httpCacheMaxBytes != that.httpCacheMaxBytes) return false;
+        if (httpConditionalGetEnabled != that.httpConditionalGetEnabled) return false;
+        if (httpCoalescingEnabled != that.httpCoalescingEnabled) return false;
+        if (httpCompactJSONEnabled != that.httpCompactJSONEnabled) return false;
+        if (httpLazyJSONEnabled != that.httpLazyJSONEnabled) return false;
         if (httpStreamingReadTimeout != that.httpStreamingReadTimeout) return false;
         if (includeEntitiesEnabled != that.includeEntitiesEnabled) return false;
         if (includeMyRetweetEnabled != that.includeMyRetweetEnabled) return false;
@@ -744,6 +982,8 @@ class ConfigurationBase implements Configuration, java.io.Serializable {
         if (dispatcherImpl != null ? !dispatcherImpl.equals(that.dispatcherImpl) : that.dispatcherImpl != null)
             return false;
         if (httpConf != null ? !httpConf.equals(that.httpConf) : that.httpConf != null) return false;
+        if (httpRetryPolicy != null ? !httpRetryPolicy.equals(that.httpRetryPolicy) : that.httpRetryPolicy != null)
+            return false;
         if (loggerFactory != null ? !loggerFactory.equals(that.loggerFactory) : that.loggerFactory != null)
             return false;
         if (mediaProvider != null ? !mediaProvider.equals(that.mediaProvider) : that.mediaProvider != null)
@@ -795,12 +1035,35 @@ class ConfigurationBase implements Configuration, java.io.Serializable {
     @Override
     public int hashCode() {
         int result = (debug ? 1 : 0);
+        long temp;
         result = 31 * result + (user != null ? user.hashCode() : 0);
         result = 31 * result + (password != null ? password.hashCode() : 0);
         result = 31 * result + (httpConf != null ? httpConf.hashCode() : 0);
         result = 31 * result + httpStreamingReadTimeout;
         result = 31 * result + httpRetryCount;
         result = 31 * result + httpRetryIntervalSeconds;
+        result = 31 * result + httpRetryMaxIntervalSeconds;
+        result = 31 * result + httpRetryMaxElapsedSeconds;
+        result = 31 * result + (httpRetryPolicy != null ? httpRetryPolicy.hashCode() : 0);
+        result = 31 * result + httpMaxConnectionsPerRoute;
+        result = 31 * result + httpMaxTotalConnections;
+        result = 31 * result + httpConnectionIdleTimeout;
+        result = 31 * result + httpConnectionValidateAfterInactivity;
+        temp = Double.doubleToLongBits(httpRateLimit);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + httpRateLimitBurst;
+        result = 31 * result + (httpRateLimitBlocking ? 1 : 0);
+        result = 31 * result + (httpRateLimits != null ? httpRateLimits.hashCode() : 0);
+        result = 31 * result + (httpCacheEnabled ? 1 : 0);
+        result = 31 * result + httpCacheMaxEntries;
+        result = 31 * result + httpCacheTTLSeconds;
+        result = 31 * result + (httpCacheTTLs != null ? httpCacheTTLs.hashCode() : 0);
+        result = 31 * result + (httpCacheDirectory != null ? httpCacheDirectory.hashCode() : 0);
+        result = 31 * result + (int) (httpCacheMaxBytes ^ (httpCacheMaxBytes >>> 32));
+        result = 31 * result + (httpConditionalGetEnabled ? 1 : 0);
+        result = 31 * result + (httpCoalescingEnabled ? 1 : 0);
+        result = 31 * result + (httpCompactJSONEnabled ? 1 : 0);
+        result = 31 * result + (httpLazyJSONEnabled ? 1 : 0);
         result = 31 * result + (oAuthConsumerKey != null ? oAuthConsumerKey.hashCode() : 0);
         result = 31 * result + (oAuthConsumerSecret != null ? oAuthConsumerSecret.hashCode() : 0);
         result = 31 * result + (oAuthAccessToken != null ? oAuthAccessToken.hashCode() : 0);
@@ -849,6 +1112,27 @@ class ConfigurationBase implements Configuration, java.io.Serializable {
                 ", httpStreamingReadTimeout=" + httpStreamingReadTimeout +
                 ", httpRetryCount=" + httpRetryCount +
                 ", httpRetryIntervalSeconds=" + httpRetryIntervalSeconds +
+                ", httpRetryMaxIntervalSeconds=" + httpRetryMaxIntervalSeconds +
+                ", httpRetryMaxElapsedSeconds=" + httpRetryMaxElapsedSeconds +
+                ", httpRetryPolicy='" + httpRetryPolicy + '\'' +
+                ", httpMaxConnectionsPerRoute=" + httpMaxConnectionsPerRoute +
+                ", httpMaxTotalConnections=" + httpMaxTotalConnections +
+                ", httpConnectionIdleTimeout=" + httpConnectionIdleTimeout +
+                ", httpConnectionValidateAfterInactivity=" + httpConnectionValidateAfterInactivity +
+                ", httpRateLimit=" + httpRateLimit +
+                ", httpRateLimitBurst=" + httpRateLimitBurst +
+                ", httpRateLimitBlocking=" + httpRateLimitBlocking +
+                ", httpRateLimits='" + httpRateLimits + '\'' +
+                ", httpCacheEnabled=" + httpCacheEnabled +
+                ", httpCacheMaxEntries=" + httpCacheMaxEntries +
+                ", httpCacheTTLSeconds=" + httpCacheTTLSeconds +
+                ", httpCacheTTLs='" + httpCacheTTLs + '\'' +
+                ", httpCacheDirectory='" + httpCacheDirectory + '\'' +
+                ", httpCacheMaxBytes=" + httpCacheMaxBytes +
+                ", httpConditionalGetEnabled=" + httpConditionalGetEnabled +
+                ", httpCoalescingEnabled=" + httpCoalescingEnabled +
+                ", httpCompactJSONEnabled=" + httpCompactJSONEnabled +
+                ", httpLazyJSONEnabled=" + httpLazyJSONEnabled +
                 ", oAuthConsumerKey='" + oAuthConsumerKey + '\'' +
                 ", oAuthConsumerSecret='" + oAuthConsumerSecret + '\'' +
                 ", oAuthAccessToken='" + oAuthAccessToken + '\'' +
@@ -45,6 +45,28 @@ public final class PropertyConfiguration extends ConfigurationBase implements ja
 
     private static final String HTTP_RETRY_COUNT = "http.retryCount";
     private static final String HTTP_RETRY_INTERVAL_SECS = "http.retryIntervalSecs";
+    private static final String HTTP_RETRY_MAX_INTERVAL_SECS = "http.retryMaxIntervalSecs";
+    private static final String HTTP_RETRY_MAX_ELAPSED_SECS = "http.retryMaxElapsedSecs";
+    private static final String HTTP_RETRY_POLICY = "http.retryPolicy";
+
+    private static final String HTTP_MAX_CONNECTIONS_PER_ROUTE = "http.maxConnectionsPerRoute";
+    private static final String HTTP_MAX_TOTAL_CONNECTIONS = "http.maxTotalConnections";
+    private static final String HTTP_CONNECTION_IDLE_TIMEOUT = "http.connectionIdleTimeout";
+    private static final String HTTP_CONNECTION_VALIDATE_AFTER_INACTIVITY = "http.connectionValidateAfterInactivity";
+    private static final String HTTP_RATE_LIMIT = "http.rateLimit";
+    private static final String HTTP_RATE_LIMIT_BURST = "http.rateLimitBurst";
+    private static final String HTTP_RATE_LIMIT_BLOCKING = "http.rateLimitBlocking";
+    private static final String HTTP_RATE_LIMITS = "http.rateLimits";
+    private static final String HTTP_CACHE_ENABLED = "http.cacheEnabled";
+    private static final String HTTP_CACHE_MAX_ENTRIES = "http.cacheMaxEntries";
+    private static final String HTTP_CACHE_TTL_SECS = "http.cacheTTLSecs";
+    private static final String HTTP_CACHE_TTLS = "http.cacheTTLs";
+    private static final String HTTP_CACHE_DIRECTORY = "http.cacheDirectory";
+    private static final String HTTP_CACHE_MAX_BYTES = "http.cacheMaxBytes";
+    private static final String HTTP_CONDITIONAL_GET_ENABLED = "http.conditionalGetEnabled";
+    private static final String HTTP_COALESCING_ENABLED = "http.coalescingEnabled";
+    private static final String HTTP_COMPACT_JSON_ENABLED = "http.compactJSONEnabled";
+    private static final String HTTP_LAZY_JSON_ENABLED = "http.lazyJSONEnabled";
 
     private static final String OAUTH_CONSUMER_KEY = "oauth.consumerKey";
     private static final String OAUTH_CONSUMER_SECRET = "oauth.consumerSecret";
@@ -271,6 +293,69 @@ public final class PropertyConfiguration extends ConfigurationBase implements ja
         if (notNull(props, prefix, HTTP_RETRY_INTERVAL_SECS)) {
             setHttpRetryIntervalSeconds(getIntProperty(props, prefix, HTTP_RETRY_INTERVAL_SECS));
         }
+        if (notNull(props, prefix, HTTP_RETRY_MAX_INTERVAL_SECS)) {
+            setHttpRetryMaxIntervalSeconds(getIntProperty(props, prefix, HTTP_RETRY_MAX_INTERVAL_SECS));
+        }
+        if (notNull(props, prefix, HTTP_RETRY_MAX_ELAPSED_SECS)) {
+            setHttpRetryMaxElapsedSeconds(getIntProperty(props, prefix, HTTP_RETRY_MAX_ELAPSED_SECS));
+        }
+        if (notNull(props, prefix, HTTP_RETRY_POLICY)) {
+            setHttpRetryPolicy(getString(props, prefix, HTTP_RETRY_POLICY));
+        }
+        if (notNull(props, prefix, HTTP_MAX_CONNECTIONS_PER_ROUTE)) {
+            setHttpMaxConnectionsPerRoute(getIntProperty(props, prefix, HTTP_MAX_CONNECTIONS_PER_ROUTE));
+        }
+        if (notNull(props, prefix, HTTP_MAX_TOTAL_CONNECTIONS)) {
+            setHttpMaxTotalConnections(getIntProperty(props, prefix, HTTP_MAX_TOTAL_CONNECTIONS));
+        }
+        if (notNull(props, prefix, HTTP_CONNECTION_IDLE_TIMEOUT)) {
+            setHttpConnectionIdleTimeout(getIntProperty(props, prefix, HTTP_CONNECTION_IDLE_TIMEOUT));
+        }
+        if (notNull(props, prefix, HTTP_CONNECTION_VALIDATE_AFTER_INACTIVITY)) {
+            setHttpConnectionValidateAfterInactivity(getIntProperty(props, prefix, HTTP_CONNECTION_VALIDATE_AFTER_INACTIVITY));
+        }
+        if (notNull(props, prefix, HTTP_RATE_LIMIT)) {
+            setHttpRateLimit(getDoubleProperty(props, prefix, HTTP_RATE_LIMIT));
+        }
+        if (notNull(props, prefix, HTTP_RATE_LIMIT_BURST)) {
+            setHttpRateLimitBurst(getIntProperty(props, prefix, HTTP_RATE_LIMIT_BURST));
+        }
+        if (notNull(props, prefix, HTTP_RATE_LIMIT_BLOCKING)) {
+            setHttpRateLimitBlocking(getBoolean(props, prefix, HTTP_RATE_LIMIT_BLOCKING));
+        }
+        if (notNull(props, prefix, HTTP_RATE_LIMITS)) {
+            setHttpRateLimits(getString(props, prefix, HTTP_RATE_LIMITS));
+        }
+        if (notNull(props, prefix, HTTP_CACHE_ENABLED)) {
+            setHttpCacheEnabled(getBoolean(props, prefix, HTTP_CACHE_ENABLED));
+        }
+        if (notNull(props, prefix, HTTP_CACHE_MAX_ENTRIES)) {
+            setHttpCacheMaxEntries(getIntProperty(props, prefix, HTTP_CACHE_MAX_ENTRIES));
+        }
+        if (notNull(props, prefix, HTTP_CACHE_TTL_SECS)) {
+            setHttpCacheTTLSeconds(getIntProperty(props, prefix, HTTP_CACHE_TTL_SECS));
+        }
+        if (notNull(props, prefix, HTTP_CACHE_TTLS)) {
+            setHttpCacheTTLs(getString(props, prefix, HTTP_CACHE_TTLS));
+        }
+        if (notNull(props, prefix, HTTP_CACHE_DIRECTORY)) {
+            setHttpCacheDirectory(getString(props, prefix, HTTP_CACHE_DIRECTORY));
+        }
+        if (notNull(props, prefix, HTTP_CACHE_MAX_BYTES)) {
+            setHttpCacheMaxBytes(getLongProperty(props, prefix, HTTP_CACHE_MAX_BYTES));
+        }
+        if (notNull(props, prefix, HTTP_CONDITIONAL_GET_ENABLED)) {
+            setHttpConditionalGetEnabled(getBoolean(props, prefix, HTTP_CONDITIONAL_GET_ENABLED));
+        }
+        if (notNull(props, prefix, HTTP_COALESCING_ENABLED)) {
+            setHttpCoalescingEnabled(getBoolean(props, prefix, HTTP_COALESCING_ENABLED));
+        }
+        if (notNull(props, prefix, HTTP_COMPACT_JSON_ENABLED)) {
+            setHttpCompactJSONEnabled(getBoolean(props, prefix, HTTP_COMPACT_JSON_ENABLED));
+        }
+        if (notNull(props, prefix, HTTP_LAZY_JSON_ENABLED)) {
+            setHttpLazyJSONEnabled(getBoolean(props, prefix, HTTP_LAZY_JSON_ENABLED));
+        }
         if (notNull(props, prefix, OAUTH_CONSUMER_KEY)) {
             setOAuthConsumerKey(getString(props, prefix, OAUTH_CONSUMER_KEY));
         }
@@ -410,6 +495,15 @@ public final class PropertyConfiguration extends ConfigurationBase implements ja
         }
     }
 
+    double getDoubleProperty(Properties props, String prefix, String name) {
+        String value = props.getProperty(prefix + name);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException nfe) {
+            return -1d;
+        }
+    }
+
     String getString(Properties props, String prefix, String name) {
         return props.getProperty(prefix + name);
     }
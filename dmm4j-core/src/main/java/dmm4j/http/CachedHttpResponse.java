@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HttpResponse served from memory.<br>
+ * Every call to {@link #asStream()} or {@link #asReader()} returns a fresh view of the body. Cache
+ * hits and coalesced requests hand each caller its own instance, see {@link #copy()}, since the
+ * JSON parsed from a response is cached on it and lazily parsed trees are not thread-safe.
+ *
+ * @author nikuyoshi
+ */
+final class CachedHttpResponse extends HttpResponse {
+  private final Map<String, List<String>> headerFields;
+
+  CachedHttpResponse(int statusCode, Map<String, List<String>> headerFields, String body,
+      HttpClientConfiguration conf) {
+    super(conf);
+    this.statusCode = statusCode;
+    this.headerFields = headerFields;
+    this.responseAsString = body;
+  }
+
+  /**
+   * @return a response with the same status, headers and body, but none of the parsed JSON
+   */
+  CachedHttpResponse copy() {
+    return new CachedHttpResponse(statusCode, headerFields, responseAsString, CONF);
+  }
+
+  @Override
+  public InputStream asStream() {
+    try {
+      return new ByteArrayInputStream(responseAsString.getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException uee) {
+      throw new AssertionError(uee);
+    }
+  }
+
+  @Override
+  public Reader asReader() {
+    return new StringReader(responseAsString);
+  }
+
+  @Override
+  public String getResponseHeader(String name) {
+    for (Map.Entry<String, List<String>> entry : headerFields.entrySet()) {
+      if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(name)) {
+        List<String> values = entry.getValue();
+        return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaderFields() {
+    return headerFields;
+  }
+
+  @Override
+  public void disconnect() {
+    // nothing to release
+  }
+}
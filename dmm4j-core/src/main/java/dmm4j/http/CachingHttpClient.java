@@ -0,0 +1,340 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import dmm4j.DmmException;
+import dmm4j.log.Logger;
+
+/**
+ * HttpClient decorator caching successful GET responses in memory.<br>
+ * Entries are keyed on the method and the URL with its query parameters sorted, expire after
+ * http.cacheTTLSecs, and the least recently used entry is evicted once http.cacheMaxEntries is
+ * reached. TTLs can be overridden per endpoint with http.cacheTTLs, a comma separated list of
+ * url-prefix=seconds pairs where the longest matching prefix wins and 0 disables caching.<br>
+ * When http.cacheDirectory is set, entries are also written to a {@link DiskResponseCache} bounded
+ * by http.cacheMaxBytes, which is consulted on memory misses and survives restarts.<br>
+ * {@link HttpClientFactory} wraps the configured client when http.cacheEnabled is true.
+ *
+ * @author nikuyoshi
+ */
+public final class CachingHttpClient implements HttpClient {
+  private static final Logger logger = Logger.getLogger(CachingHttpClient.class);
+
+  private final HttpClient delegate;
+  private final HttpClientConfiguration conf;
+  private final String[] ttlPrefixes;
+  private final long[] ttlMillis;
+  private final Map<String, Entry> entries;
+  private final DiskResponseCache disk;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+  private final AtomicLong diskHitCount = new AtomicLong();
+
+  /**
+   * a cached response body together with its status line and headers
+   */
+  static final class Entry {
+    final int statusCode;
+    final Map<String, List<String>> headerFields;
+    final String body;
+    final long expiresAt;
+
+    Entry(int statusCode, Map<String, List<String>> headerFields, String body, long expiresAt) {
+      this.statusCode = statusCode;
+      this.headerFields = headerFields;
+      this.body = body;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  public CachingHttpClient(HttpClient delegate, HttpClientConfiguration conf) {
+    this.delegate = delegate;
+    this.conf = conf;
+    final int maxEntries = Math.max(1, conf.getHttpCacheMaxEntries());
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = -1590727611585627442L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > maxEntries) {
+          evictionCount.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+    List<String> prefixes = new ArrayList<String>();
+    List<Long> millis = new ArrayList<Long>();
+    if (conf.getHttpCacheTTLs() != null) {
+      for (String pair : conf.getHttpCacheTTLs().split(",")) {
+        int eq = pair.lastIndexOf('=');
+        if (eq <= 0) {
+          continue;
+        }
+        try {
+          millis.add(Long.parseLong(pair.substring(eq + 1).trim()) * 1000);
+          prefixes.add(pair.substring(0, eq).trim());
+        } catch (NumberFormatException nfe) {
+          logger.warn("Ignoring malformed http.cacheTTLs entry: ", pair);
+        }
+      }
+    }
+    this.ttlPrefixes = prefixes.toArray(new String[prefixes.size()]);
+    this.ttlMillis = new long[millis.size()];
+    for (int i = 0; i < ttlMillis.length; i++) {
+      ttlMillis[i] = millis.get(i);
+    }
+    DiskResponseCache diskCache = null;
+    if (conf.getHttpCacheDirectory() != null && conf.getHttpCacheDirectory().length() != 0) {
+      try {
+        diskCache = new DiskResponseCache(new File(conf.getHttpCacheDirectory()),
+            conf.getHttpCacheMaxBytes());
+      } catch (IOException ioe) {
+        logger.warn("Disk cache disabled: ", ioe.getMessage());
+      }
+    }
+    this.disk = diskCache;
+  }
+
+  @Override
+  public HttpResponse request(HttpRequest req) throws DmmException {
+    String key = cacheKey(req);
+    if (key == null) {
+      return delegate.request(req);
+    }
+    HttpResponse cached = lookup(key);
+    if (cached != null) {
+      return cached;
+    }
+    return store(key, delegate.request(req));
+  }
+
+  @Override
+  public CompletableFuture<HttpResponse> requestAsync(HttpRequest req) {
+    final String key = cacheKey(req);
+    if (key == null) {
+      return delegate.requestAsync(req);
+    }
+    HttpResponse cached = lookup(key);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    return delegate.requestAsync(req).thenApply(new Function<HttpResponse, HttpResponse>() {
+      @Override
+      public HttpResponse apply(HttpResponse res) {
+        try {
+          return store(key, res);
+        } catch (DmmException de) {
+          throw new CompletionException(de);
+        }
+      }
+    });
+  }
+
+  private HttpResponse lookup(String key) {
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+        entries.remove(key);
+        entry = null;
+      }
+    }
+    if (entry == null && disk != null) {
+      entry = disk.get(key);
+      if (entry != null) {
+        diskHitCount.incrementAndGet();
+        synchronized (entries) {
+          entries.put(key, entry);
+        }
+      }
+    }
+    if (entry == null) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    logger.debug("Cache hit: ", key);
+    return new CachedHttpResponse(entry.statusCode, entry.headerFields, entry.body, conf);
+  }
+
+  private HttpResponse store(String key, HttpResponse res) throws DmmException {
+    if (res.getStatusCode() != HttpResponseCode.OK) {
+      return res;
+    }
+    long ttl = ttlMillis(key);
+    if (ttl <= 0) {
+      return res;
+    }
+    String body = res.asString();
+    Map<String, List<String>> headerFields =
+        Collections.unmodifiableMap(new LinkedHashMap<String, List<String>>(
+            res.getResponseHeaderFields()));
+    Entry entry = new Entry(res.getStatusCode(), headerFields, body,
+        System.currentTimeMillis() + ttl);
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+    if (disk != null) {
+      disk.put(key, entry);
+    }
+    return new CachedHttpResponse(entry.statusCode, entry.headerFields, entry.body, conf);
+  }
+
+  private long ttlMillis(String key) {
+    // the key is "GET <url>"
+    int longest = -1;
+    long ttl = conf.getHttpCacheTTLSeconds() * 1000L;
+    for (int i = 0; i < ttlPrefixes.length; i++) {
+      if (ttlPrefixes[i].length() > longest && key.startsWith(ttlPrefixes[i], 4)) {
+        longest = ttlPrefixes[i].length();
+        ttl = ttlMillis[i];
+      }
+    }
+    return ttl;
+  }
+
+  /**
+   * @param req request
+   * @return the method followed by the URL with its query parameters sorted, or null if the request
+   *         is not cacheable
+   */
+  static String cacheKey(HttpRequest req) {
+    if (req.getMethod() != RequestMethod.GET) {
+      return null;
+    }
+    String url = req.getURL();
+    int query = url.indexOf('?');
+    if (query == -1) {
+      return "GET " + url;
+    }
+    String[] pairs = url.substring(query + 1).split("&");
+    Arrays.sort(pairs);
+    StringBuilder key = new StringBuilder(url.length() + 4);
+    key.append("GET ").append(url, 0, query + 1);
+    for (int i = 0; i < pairs.length; i++) {
+      if (i != 0) {
+        key.append('&');
+      }
+      key.append(pairs[i]);
+    }
+    return key.toString();
+  }
+
+  /**
+   * discards all cached responses, including the ones on disk
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+    if (disk != null) {
+      disk.clear();
+    }
+  }
+
+  /**
+   * flushes and closes the disk cache, and shuts down the underlying client
+   */
+  @Override
+  public void shutdown() {
+    if (disk != null) {
+      disk.close();
+    }
+    delegate.shutdown();
+  }
+
+  public int getCacheSize() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * @return number of hits served from the disk cache, also counted in {@link #getHitCount()}
+   */
+  public long getDiskHitCount() {
+    return diskHitCount.get();
+  }
+
+  @Override
+  public void addDefaultRequestHeader(String name, String value) {
+    delegate.addDefaultRequestHeader(name, value);
+  }
+
+  @Override
+  public Map<String, String> getRequestHeaders() {
+    return delegate.getRequestHeaders();
+  }
+
+  @Override
+  public HttpResponse get(String url) throws DmmException {
+    return request(new HttpRequest(RequestMethod.GET, url, null, getRequestHeaders()));
+  }
+
+  @Override
+  public HttpResponse post(String url) throws DmmException {
+    return delegate.post(url);
+  }
+
+  @Override
+  public HttpResponse delete(String url) throws DmmException {
+    return delegate.delete(url);
+  }
+
+  @Override
+  public HttpResponse head(String url) throws DmmException {
+    return delegate.head(url);
+  }
+
+  @Override
+  public HttpResponse put(String url) throws DmmException {
+    return delegate.put(url);
+  }
+
+  @Override
+  public String toString() {
+    return "CachingHttpClient{" + "delegate=" + delegate + ", cacheSize=" + getCacheSize()
+        + ", hitCount=" + hitCount + ", diskHitCount=" + diskHitCount + ", missCount=" + missCount
+        + ", evictionCount=" + evictionCount + ", disk=" + disk + '}';
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import dmm4j.log.Logger;
+
+/**
+ * Keeps persistent connections per route (scheme, host and port).<br>
+ * The number of leased connections is bounded per route and in total, idle connections are evicted
+ * after {@link HttpClientConfiguration#getHttpConnectionIdleTimeout()} and validated before reuse
+ * once they have been idle longer than
+ * {@link HttpClientConfiguration#getHttpConnectionValidateAfterInactivity()}.
+ *
+ * @author nikuyoshi
+ */
+final class ConnectionPool {
+  private static final Logger logger = Logger.getLogger(ConnectionPool.class);
+
+  private final HttpClientConfiguration conf;
+  private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+  private final Semaphore totalPermits;
+  private final AtomicInteger openConnections = new AtomicInteger();
+  private final ScheduledFuture<?> evictionTask;
+  private volatile boolean closed = false;
+
+  private static final class Route {
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle =
+        new ConcurrentLinkedDeque<PooledConnection>();
+
+    Route(int maxPerRoute) {
+      permits = new Semaphore(maxPerRoute, true);
+    }
+  }
+
+  ConnectionPool(HttpClientConfiguration conf) {
+    this.conf = conf;
+    this.totalPermits = new Semaphore(Math.max(1, conf.getHttpMaxTotalConnections()), true);
+    long period = Math.max(1000, conf.getHttpConnectionIdleTimeout() / 2);
+    this.evictionTask = HttpClientBase.SCHEDULER.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        evictExpired();
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  static String routeOf(URL url) {
+    int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+    return url.getProtocol() + "://" + url.getHost() + ":" + port;
+  }
+
+  /**
+   * Leases a connection to the given url, opening a new one if no idle connection is available.
+   *
+   * @param url destination
+   * @return a connection which must be passed to {@link #release} or {@link #discard}
+   * @throws IOException when no connection could be obtained
+   */
+  PooledConnection lease(URL url) throws IOException {
+    if (closed) {
+      throw new IOException("Connection pool has been shut down");
+    }
+    String key = routeOf(url);
+    Route route = route(key);
+    acquire(route.permits, key);
+    try {
+      acquire(totalPermits, key);
+    } catch (IOException ioe) {
+      route.permits.release();
+      throw ioe;
+    }
+    try {
+      long now = System.currentTimeMillis();
+      PooledConnection con;
+      while ((con = route.idle.pollFirst()) != null) {
+        if (con.isExpired(now, conf.getHttpConnectionIdleTimeout())) {
+          close(con);
+        } else if (now - con.getLastUsed() > conf.getHttpConnectionValidateAfterInactivity()
+            && con.isStale()) {
+          logger.debug("Discarding stale connection: ", con.toString());
+          close(con);
+        } else {
+          con.markLeased();
+          return con;
+        }
+      }
+      con = open(url, key);
+      con.markLeased();
+      return con;
+    } catch (IOException ioe) {
+      totalPermits.release();
+      route.permits.release();
+      throw ioe;
+    }
+  }
+
+  /**
+   * Returns a fully consumed connection to the pool. Does nothing if the connection has already
+   * been released or discarded.
+   *
+   * @param con connection
+   * @param keepAliveMillis keep-alive timeout advertised by the server, or -1
+   */
+  void release(PooledConnection con, long keepAliveMillis) {
+    if (!con.markReturned()) {
+      return;
+    }
+    Route route = route(con.getRoute());
+    if (closed) {
+      close(con);
+    } else {
+      con.markIdle(keepAliveMillis);
+      route.idle.offerFirst(con);
+    }
+    totalPermits.release();
+    route.permits.release();
+  }
+
+  /**
+   * Closes a connection which cannot be reused. Does nothing if the connection has already been
+   * released or discarded, as it may have been leased again since.
+   *
+   * @param con connection
+   */
+  void discard(PooledConnection con) {
+    if (!con.markReturned()) {
+      return;
+    }
+    Route route = route(con.getRoute());
+    close(con);
+    totalPermits.release();
+    route.permits.release();
+  }
+
+  int getOpenConnections() {
+    return openConnections.get();
+  }
+
+  /**
+   * closes all idle connections and stops the eviction task
+   */
+  void shutdown() {
+    closed = true;
+    evictionTask.cancel(false);
+    for (Route route : routes.values()) {
+      PooledConnection con;
+      while ((con = route.idle.pollFirst()) != null) {
+        close(con);
+      }
+    }
+  }
+
+  private Route route(String key) {
+    Route route = routes.get(key);
+    if (route == null) {
+      Route newRoute = new Route(Math.max(1, conf.getHttpMaxConnectionsPerRoute()));
+      route = routes.putIfAbsent(key, newRoute);
+      if (route == null) {
+        route = newRoute;
+      }
+    }
+    return route;
+  }
+
+  private void acquire(Semaphore semaphore, String key) throws IOException {
+    int timeout = conf.getHttpConnectionTimeout();
+    try {
+      if (timeout > 0) {
+        if (!semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+          throw new IOException("Timeout waiting for a pooled connection to " + key);
+        }
+      } else {
+        semaphore.acquire();
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a pooled connection to " + key);
+    }
+  }
+
+  private void evictExpired() {
+    long now = System.currentTimeMillis();
+    for (Route route : routes.values()) {
+      Iterator<PooledConnection> it = route.idle.iterator();
+      while (it.hasNext()) {
+        PooledConnection con = it.next();
+        if (con.isExpired(now, conf.getHttpConnectionIdleTimeout()) && route.idle.remove(con)) {
+          close(con);
+        }
+      }
+    }
+  }
+
+  private void close(PooledConnection con) {
+    con.close();
+    openConnections.decrementAndGet();
+  }
+
+  /**
+   * Makes room for a new connection by closing the least recently used idle connection of any
+   * route when the total number of open sockets reached the limit.
+   */
+  private void evictForNewConnection() {
+    while (openConnections.get() >= conf.getHttpMaxTotalConnections()) {
+      PooledConnection oldest = null;
+      Route owner = null;
+      for (Route route : routes.values()) {
+        PooledConnection candidate = route.idle.peekLast();
+        if (candidate != null
+            && (oldest == null || candidate.getLastUsed() < oldest.getLastUsed())) {
+          oldest = candidate;
+          owner = route;
+        }
+      }
+      if (oldest == null) {
+        return;
+      }
+      if (owner.idle.remove(oldest)) {
+        close(oldest);
+      }
+    }
+  }
+
+  private PooledConnection open(URL url, String key) throws IOException {
+    evictForNewConnection();
+    String host = url.getHost();
+    int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+    boolean https = "https".equalsIgnoreCase(url.getProtocol());
+    boolean proxied = conf.getHttpProxyHost() != null && !conf.getHttpProxyHost().equals("");
+
+    Socket socket = new Socket();
+    try {
+      socket.setTcpNoDelay(true);
+      socket.setKeepAlive(true);
+      if (conf.getHttpReadTimeout() > 0) {
+        socket.setSoTimeout(conf.getHttpReadTimeout());
+      }
+      int connectTimeout = Math.max(0, conf.getHttpConnectionTimeout());
+      if (proxied) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Opening proxied connection(" + conf.getHttpProxyHost() + ":"
+              + conf.getHttpProxyPort() + ")");
+        }
+        socket.connect(new InetSocketAddress(conf.getHttpProxyHost(), conf.getHttpProxyPort()),
+            connectTimeout);
+        if (https) {
+          tunnel(socket, host, port);
+        }
+      } else {
+        socket.connect(new InetSocketAddress(host, port), connectTimeout);
+      }
+      if (https) {
+        SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, host, port, true);
+        SSLParameters params = sslSocket.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setSSLParameters(params);
+        sslSocket.startHandshake();
+        socket = sslSocket;
+      }
+      openConnections.incrementAndGet();
+      logger.debug("Opened a new connection to ", key);
+      return new PooledConnection(key, socket, conf.getHttpReadTimeout());
+    } catch (IOException ioe) {
+      try {
+        socket.close();
+      } catch (IOException ignore) {
+      }
+      throw ioe;
+    }
+  }
+
+  private void tunnel(Socket socket, String host, int port) throws IOException {
+    StringBuilder connect = new StringBuilder();
+    connect.append("CONNECT ").append(host).append(':').append(port).append(" HTTP/1.1\r\n");
+    connect.append("Host: ").append(host).append(':').append(port).append("\r\n");
+    String authorization = proxyAuthorization(conf);
+    if (authorization != null) {
+      connect.append("Proxy-Authorization: ").append(authorization).append("\r\n");
+    }
+    connect.append("\r\n");
+    OutputStream out = socket.getOutputStream();
+    out.write(connect.toString().getBytes("ISO-8859-1"));
+    out.flush();
+
+    // read the proxy response without buffering beyond its header
+    InputStream in = socket.getInputStream();
+    String statusLine = readLine(in);
+    if (statusLine == null || statusLine.split(" ").length < 2
+        || !statusLine.split(" ")[1].equals("200")) {
+      throw new IOException("Unable to tunnel through proxy. Proxy returns \"" + statusLine + "\"");
+    }
+    String line;
+    while ((line = readLine(in)) != null && line.length() != 0) {
+      // skip proxy response headers
+    }
+  }
+
+  static String proxyAuthorization(HttpClientConfiguration conf) throws IOException {
+    if (conf.getHttpProxyUser() == null || conf.getHttpProxyUser().equals("")) {
+      return null;
+    }
+    String credentials = conf.getHttpProxyUser() + ":" + conf.getHttpProxyPassword();
+    return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes("UTF-8"));
+  }
+
+  /**
+   * reads a CRLF terminated line in ISO-8859-1
+   *
+   * @param in stream
+   * @return the line without line terminator, or null at the end of the stream
+   * @throws IOException when failed to read
+   */
+  static String readLine(InputStream in) throws IOException {
+    StringBuilder buf = new StringBuilder(64);
+    int c;
+    while ((c = in.read()) != -1) {
+      if (c == '\n') {
+        int len = buf.length();
+        if (len > 0 && buf.charAt(len - 1) == '\r') {
+          buf.setLength(len - 1);
+        }
+        return buf.toString();
+      }
+      buf.append((char) c);
+    }
+    return buf.length() == 0 ? null : buf.toString();
+  }
+}
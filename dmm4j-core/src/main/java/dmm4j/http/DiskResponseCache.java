@@ -0,0 +1,500 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import dmm4j.log.Logger;
+
+/**
+ * Disk tier of {@link CachingHttpClient}.<br>
+ * Responses are appended to segment files and located through an open addressing hash table kept
+ * in a memory-mapped index file, so a restarted process finds its entries without reading the
+ * segments. Once the segments outgrow http.cacheMaxBytes the live entries are copied into fresh
+ * segments, dropping expired entries and then the oldest ones until half of the budget is used.
+ *
+ * @author nikuyoshi
+ */
+final class DiskResponseCache {
+  private static final Logger logger = Logger.getLogger(DiskResponseCache.class);
+
+  private static final int INDEX_MAGIC = 0x444d4931; // "DMI1"
+  private static final int RECORD_MAGIC = 0x444d5231; // "DMR1"
+  private static final int HEADER_SIZE = 64;
+  private static final int SLOT_SIZE = 32;
+  private static final int MIN_CAPACITY = 1024;
+
+  // header layout
+  private static final int H_MAGIC = 0;
+  private static final int H_CAPACITY = 4;
+  private static final int H_USED = 8;
+  private static final int H_LIVE = 12;
+  private static final int H_ACTIVE_SEGMENT = 16;
+
+  // slot layout: hash, segment, offset, length, expiresAt
+  private static final int S_HASH = 0;
+  private static final int S_SEGMENT = 8;
+  private static final int S_OFFSET = 12;
+  private static final int S_LENGTH = 16;
+  private static final int S_EXPIRES_AT = 24;
+
+  private static final long EMPTY = 0;
+  private static final long TOMBSTONE = 1;
+
+  private final File directory;
+  private final long maxBytes;
+  private final long segmentSize;
+  private final RandomAccessFile indexFile;
+  private MappedByteBuffer index;
+  private int capacity;
+  private final TreeMap<Integer, FileChannel> segments = new TreeMap<Integer, FileChannel>();
+
+  DiskResponseCache(File directory, long maxBytes) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create cache directory: " + directory);
+    }
+    this.directory = directory;
+    this.maxBytes = Math.max(1024 * 1024, maxBytes);
+    this.segmentSize = Math.min(Integer.MAX_VALUE, Math.max(256 * 1024, this.maxBytes / 8));
+    this.indexFile = new RandomAccessFile(new File(directory, "index.dat"), "rw");
+    boolean valid = false;
+    if (indexFile.length() >= HEADER_SIZE) {
+      index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, indexFile.length());
+      capacity = index.getInt(H_MAGIC) == INDEX_MAGIC ? index.getInt(H_CAPACITY) : 0;
+      valid = capacity >= MIN_CAPACITY && Integer.bitCount(capacity) == 1
+          && indexFile.length() == HEADER_SIZE + (long) capacity * SLOT_SIZE;
+    }
+    if (valid) {
+      for (File file : listSegmentFiles()) {
+        segments.put(segmentId(file), new RandomAccessFile(file, "rw").getChannel());
+      }
+      logger.debug("Opened disk cache, entries: ", String.valueOf(index.getInt(H_LIVE)));
+    } else {
+      // missing or corrupt, start over
+      for (File file : listSegmentFiles()) {
+        file.delete();
+      }
+      initIndex(MIN_CAPACITY);
+      index.putInt(H_ACTIVE_SEGMENT, 0);
+    }
+    if (!segments.containsKey(activeSegment())) {
+      openSegment(activeSegment());
+    }
+  }
+
+  /**
+   * @param key cache key
+   * @return the entry stored with the key, or null if absent, expired or unreadable
+   */
+  synchronized CachingHttpClient.Entry get(String key) {
+    long hash = hash(key);
+    int slot = find(hash);
+    if (slot == -1) {
+      return null;
+    }
+    int pos = slotPosition(slot);
+    if (index.getLong(pos + S_EXPIRES_AT) <= System.currentTimeMillis()) {
+      remove(slot);
+      return null;
+    }
+    try {
+      return readRecord(index.getInt(pos + S_SEGMENT), index.getInt(pos + S_OFFSET),
+          index.getInt(pos + S_LENGTH), key);
+    } catch (IOException ioe) {
+      logger.debug("Dropping unreadable cache entry: ", ioe.getMessage());
+      remove(slot);
+      return null;
+    }
+  }
+
+  synchronized void put(String key, CachingHttpClient.Entry entry) {
+    try {
+      byte[] record = encode(key, entry);
+      if (record.length > segmentSize) {
+        return;
+      }
+      FileChannel channel = segments.get(activeSegment());
+      if (channel.size() + record.length > segmentSize) {
+        int next = activeSegment() + 1;
+        index.putInt(H_ACTIVE_SEGMENT, next);
+        channel = openSegment(next);
+      }
+      int offset = (int) channel.size();
+      writeFully(channel, record, offset);
+
+      long hash = hash(key);
+      int slot = find(hash);
+      if (slot == -1) {
+        if ((index.getInt(H_USED) + 1) * 4L > capacity * 3L) {
+          rebuild(capacity * 2, null);
+        }
+        slot = insertionSlot(hash);
+        if (index.getLong(slotPosition(slot) + S_HASH) == EMPTY) {
+          index.putInt(H_USED, index.getInt(H_USED) + 1);
+        }
+        index.putInt(H_LIVE, index.getInt(H_LIVE) + 1);
+      }
+      writeSlot(slot, hash, activeSegment(), offset, record.length, entry.expiresAt);
+      if (diskBytes() > maxBytes) {
+        compact();
+      }
+    } catch (IOException ioe) {
+      logger.warn("Failed to write disk cache entry: ", ioe.getMessage());
+    }
+  }
+
+  synchronized void clear() {
+    try {
+      for (FileChannel channel : segments.values()) {
+        channel.close();
+      }
+      segments.clear();
+      for (File file : listSegmentFiles()) {
+        file.delete();
+      }
+      initIndex(MIN_CAPACITY);
+      index.putInt(H_ACTIVE_SEGMENT, 0);
+      openSegment(0);
+    } catch (IOException ioe) {
+      logger.warn("Failed to clear disk cache: ", ioe.getMessage());
+    }
+  }
+
+  synchronized int size() {
+    return index.getInt(H_LIVE);
+  }
+
+  synchronized long diskBytes() throws IOException {
+    long total = 0;
+    for (FileChannel channel : segments.values()) {
+      total += channel.size();
+    }
+    return total;
+  }
+
+  synchronized void close() {
+    index.force();
+    for (FileChannel channel : segments.values()) {
+      try {
+        channel.close();
+      } catch (IOException ignore) {
+      }
+    }
+    segments.clear();
+    try {
+      indexFile.close();
+    } catch (IOException ignore) {
+    }
+  }
+
+  /**
+   * Copies live entries into fresh segments and deletes the old ones. Expired entries are dropped,
+   * then the oldest entries until the survivors fit in half of http.cacheMaxBytes.
+   */
+  private void compact() throws IOException {
+    long now = System.currentTimeMillis();
+    List<int[]> live = new ArrayList<int[]>();
+    long liveBytes = 0;
+    for (int slot = 0; slot < capacity; slot++) {
+      int pos = slotPosition(slot);
+      long hash = index.getLong(pos + S_HASH);
+      if (hash != EMPTY && hash != TOMBSTONE && index.getLong(pos + S_EXPIRES_AT) > now) {
+        live.add(new int[] {slot, index.getInt(pos + S_SEGMENT), index.getInt(pos + S_OFFSET),
+            index.getInt(pos + S_LENGTH)});
+        liveBytes += index.getInt(pos + S_LENGTH);
+      }
+    }
+    // oldest first
+    Collections.sort(live, new Comparator<int[]>() {
+      @Override
+      public int compare(int[] a, int[] b) {
+        return a[1] != b[1] ? (a[1] < b[1] ? -1 : 1) : (a[2] < b[2] ? -1 : (a[2] == b[2] ? 0 : 1));
+      }
+    });
+    int first = 0;
+    while (first < live.size() && liveBytes > maxBytes / 2) {
+      liveBytes -= live.get(first++)[3];
+    }
+    List<Integer> oldSegments = new ArrayList<Integer>(segments.keySet());
+    int segment = activeSegment() + 1;
+    FileChannel out = openSegment(segment);
+    Map<Long, long[]> moved = new LinkedHashMap<Long, long[]>();
+    for (int[] entry : live.subList(first, live.size())) {
+      ByteBuffer record = ByteBuffer.allocate(entry[3]);
+      readFully(segments.get(entry[1]), record, entry[2]);
+      if (out.size() + entry[3] > segmentSize) {
+        out = openSegment(++segment);
+      }
+      int offset = (int) out.size();
+      writeFully(out, record.array(), offset);
+      int pos = slotPosition(entry[0]);
+      moved.put(index.getLong(pos + S_HASH), new long[] {segment, offset, entry[3],
+          index.getLong(pos + S_EXPIRES_AT)});
+    }
+    index.putInt(H_ACTIVE_SEGMENT, segment);
+    rebuild(capacity, moved);
+    for (Integer old : oldSegments) {
+      segments.remove(old).close();
+      new File(directory, segmentName(old)).delete();
+    }
+    logger.debug("Compacted disk cache, entries: ", String.valueOf(moved.size()));
+  }
+
+  /**
+   * Re-creates the hash table with the given capacity.
+   *
+   * @param newCapacity capacity, a power of two
+   * @param entries locations keyed by hash to store, or null to keep the current live slots
+   */
+  private void rebuild(int newCapacity, Map<Long, long[]> entries) throws IOException {
+    if (entries == null) {
+      entries = new LinkedHashMap<Long, long[]>();
+      for (int slot = 0; slot < capacity; slot++) {
+        int pos = slotPosition(slot);
+        long hash = index.getLong(pos + S_HASH);
+        if (hash != EMPTY && hash != TOMBSTONE) {
+          entries.put(hash, new long[] {index.getInt(pos + S_SEGMENT),
+              index.getInt(pos + S_OFFSET), index.getInt(pos + S_LENGTH),
+              index.getLong(pos + S_EXPIRES_AT)});
+        }
+      }
+    }
+    int active = activeSegment();
+    initIndex(Math.max(newCapacity, MIN_CAPACITY));
+    index.putInt(H_ACTIVE_SEGMENT, active);
+    for (Map.Entry<Long, long[]> entry : entries.entrySet()) {
+      long[] location = entry.getValue();
+      writeSlot(insertionSlot(entry.getKey()), entry.getKey(), (int) location[0],
+          (int) location[1], (int) location[2], location[3]);
+    }
+    index.putInt(H_USED, entries.size());
+    index.putInt(H_LIVE, entries.size());
+  }
+
+  private void initIndex(int newCapacity) throws IOException {
+    long length = HEADER_SIZE + (long) newCapacity * SLOT_SIZE;
+    indexFile.setLength(0);
+    indexFile.setLength(length);
+    index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+    capacity = newCapacity;
+    index.putInt(H_MAGIC, INDEX_MAGIC);
+    index.putInt(H_CAPACITY, newCapacity);
+    index.putInt(H_USED, 0);
+    index.putInt(H_LIVE, 0);
+  }
+
+  /**
+   * @return the slot holding the key, or -1
+   */
+  private int find(long hash) {
+    int mask = capacity - 1;
+    for (int i = 0, slot = (int) hash & mask; i < capacity; i++, slot = (slot + 1) & mask) {
+      long stored = index.getLong(slotPosition(slot) + S_HASH);
+      if (stored == EMPTY) {
+        return -1;
+      }
+      if (stored == hash) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private int insertionSlot(long hash) {
+    int mask = capacity - 1;
+    int slot = (int) hash & mask;
+    while (true) {
+      long stored = index.getLong(slotPosition(slot) + S_HASH);
+      if (stored == EMPTY || stored == TOMBSTONE) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private void remove(int slot) {
+    index.putLong(slotPosition(slot) + S_HASH, TOMBSTONE);
+    index.putInt(H_LIVE, index.getInt(H_LIVE) - 1);
+  }
+
+  private void writeSlot(int slot, long hash, int segment, int offset, int length, long expiresAt) {
+    int pos = slotPosition(slot);
+    index.putInt(pos + S_SEGMENT, segment);
+    index.putInt(pos + S_OFFSET, offset);
+    index.putInt(pos + S_LENGTH, length);
+    index.putLong(pos + S_EXPIRES_AT, expiresAt);
+    // publish the slot last
+    index.putLong(pos + S_HASH, hash);
+  }
+
+  private static int slotPosition(int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private int activeSegment() {
+    return index.getInt(H_ACTIVE_SEGMENT);
+  }
+
+  private FileChannel openSegment(int id) throws IOException {
+    FileChannel channel = new RandomAccessFile(new File(directory, segmentName(id)), "rw")
+        .getChannel();
+    segments.put(id, channel);
+    return channel;
+  }
+
+  private List<File> listSegmentFiles() {
+    File[] files = directory.listFiles();
+    List<File> result = new ArrayList<File>();
+    if (files != null) {
+      for (File file : files) {
+        if (file.getName().startsWith("segment-") && file.getName().endsWith(".dat")
+            && segmentId(file) >= 0) {
+          result.add(file);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static String segmentName(int id) {
+    return "segment-" + id + ".dat";
+  }
+
+  private static int segmentId(File file) {
+    String name = file.getName();
+    try {
+      return Integer.parseInt(name.substring("segment-".length(), name.length() - ".dat".length()));
+    } catch (NumberFormatException nfe) {
+      return -1;
+    }
+  }
+
+  private CachingHttpClient.Entry readRecord(int segment, int offset, int length, String key)
+      throws IOException {
+    FileChannel channel = segments.get(segment);
+    if (channel == null || offset + (long) length > channel.size()) {
+      throw new IOException("Truncated segment " + segment);
+    }
+    ByteBuffer buf = ByteBuffer.allocate(length);
+    readFully(channel, buf, offset);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf.array()));
+    if (in.readInt() != RECORD_MAGIC) {
+      throw new IOException("Corrupt record in segment " + segment);
+    }
+    if (!key.equals(in.readUTF())) {
+      // 64 bit hash collision
+      return null;
+    }
+    long expiresAt = in.readLong();
+    int statusCode = in.readInt();
+    int headerCount = in.readInt();
+    Map<String, List<String>> headerFields = new LinkedHashMap<String, List<String>>();
+    for (int i = 0; i < headerCount; i++) {
+      String name = in.readBoolean() ? in.readUTF() : null;
+      int valueCount = in.readInt();
+      List<String> values = new ArrayList<String>(valueCount);
+      for (int j = 0; j < valueCount; j++) {
+        values.add(in.readUTF());
+      }
+      headerFields.put(name, Collections.unmodifiableList(values));
+    }
+    byte[] body = new byte[in.readInt()];
+    in.readFully(body);
+    return new CachingHttpClient.Entry(statusCode, Collections.unmodifiableMap(headerFields),
+        new String(body, "UTF-8"), expiresAt);
+  }
+
+  private static byte[] encode(String key, CachingHttpClient.Entry entry) throws IOException {
+    byte[] body = entry.body.getBytes("UTF-8");
+    ByteArrayOutputStream buf = new ByteArrayOutputStream(body.length + 256);
+    DataOutputStream out = new DataOutputStream(buf);
+    out.writeInt(RECORD_MAGIC);
+    out.writeUTF(key);
+    out.writeLong(entry.expiresAt);
+    out.writeInt(entry.statusCode);
+    out.writeInt(entry.headerFields.size());
+    for (Map.Entry<String, List<String>> header : entry.headerFields.entrySet()) {
+      out.writeBoolean(header.getKey() != null);
+      if (header.getKey() != null) {
+        out.writeUTF(header.getKey());
+      }
+      List<String> values = header.getValue() == null ? Collections.<String>emptyList()
+          : header.getValue();
+      out.writeInt(values.size());
+      for (String value : values) {
+        out.writeUTF(value);
+      }
+    }
+    out.writeInt(body.length);
+    out.write(body);
+    out.flush();
+    return buf.toByteArray();
+  }
+
+  private static void writeFully(FileChannel channel, byte[] data, long position)
+      throws IOException {
+    ByteBuffer buf = ByteBuffer.wrap(data);
+    while (buf.hasRemaining()) {
+      position += channel.write(buf, position);
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buf, long position)
+      throws IOException {
+    while (buf.hasRemaining()) {
+      int n = channel.read(buf, position);
+      if (n == -1) {
+        throw new IOException("Unexpected end of segment");
+      }
+      position += n;
+    }
+  }
+
+  /**
+   * 64 bit FNV-1a, avoiding the values reserved for empty and deleted slots
+   */
+  static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash ^= key.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash == EMPTY || hash == TOMBSTONE ? hash + 2 : hash;
+  }
+
+  @Override
+  public String toString() {
+    return "DiskResponseCache{" + "directory=" + directory + ", maxBytes=" + maxBytes
+        + ", capacity=" + capacity + ", segments=" + Arrays.toString(segments.keySet().toArray())
+        + '}';
+  }
+}
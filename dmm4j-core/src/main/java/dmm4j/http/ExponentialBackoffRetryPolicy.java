@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RetryPolicy backing off exponentially with full jitter.<br>
+ * The n-th retry waits a random time between zero and
+ * min(http.retryMaxIntervalSecs, http.retryIntervalSecs * 2^n). A Retry-After header sent with
+ * 429 Too Many Requests or 503 Service Unavailable takes precedence over the computed delay.
+ * Retries stop after http.retryCount attempts or once http.retryMaxElapsedSecs has passed since
+ * the first attempt.<br>
+ * Enable with http.retryPolicy=dmm4j.http.ExponentialBackoffRetryPolicy
+ *
+ * @author nikuyoshi
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy, HttpResponseCode {
+  private static final long serialVersionUID = 5208154623427613375L;
+  private final HttpClientConfiguration conf;
+
+  public ExponentialBackoffRetryPolicy(HttpClientConfiguration conf) {
+    this.conf = conf;
+  }
+
+  @Override
+  public long nextDelayMillis(int retriedCount, long elapsedMillis, HttpResponse res,
+      IOException ioe) {
+    if (retriedCount >= conf.getHttpRetryCount()) {
+      return -1;
+    }
+    long delay;
+    long retryAfter = -1;
+    if (res != null) {
+      int responseCode = res.getStatusCode();
+      if (responseCode != TOO_MANY_REQUESTS && responseCode < INTERNAL_SERVER_ERROR) {
+        return -1;
+      }
+      if (responseCode == TOO_MANY_REQUESTS || responseCode == SERVICE_UNAVAILABLE) {
+        retryAfter = parseRetryAfter(res.getResponseHeader("Retry-After"));
+      }
+    }
+    if (retryAfter >= 0) {
+      delay = retryAfter;
+    } else {
+      long base = Math.max(1, conf.getHttpRetryIntervalSeconds()) * 1000L;
+      long cap = Math.max(base, conf.getHttpRetryMaxIntervalSeconds() * 1000L);
+      // avoid overflow of the shift for large retry counts
+      long ceiling = retriedCount >= 30 ? cap : Math.min(cap, base << retriedCount);
+      delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+    long maxElapsed = conf.getHttpRetryMaxElapsedSeconds() * 1000L;
+    if (maxElapsed > 0 && elapsedMillis + delay > maxElapsed) {
+      return -1;
+    }
+    return delay;
+  }
+
+  /**
+   * @param value Retry-After header value, either delta-seconds or an HTTP-date
+   * @return milliseconds to wait, or -1 if the value is absent or malformed
+   */
+  static long parseRetryAfter(String value) {
+    if (value == null) {
+      return -1;
+    }
+    value = value.trim();
+    try {
+      return Math.max(0, Long.parseLong(value) * 1000);
+    } catch (NumberFormatException ignore) {
+    }
+    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    try {
+      return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+    } catch (ParseException pe) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.IOException;
+
+/**
+ * Default RetryPolicy: retries I/O failures and 5xx responses http.retryCount times, waiting
+ * http.retryIntervalSecs between attempts.
+ *
+ * @author nikuyoshi
+ */
+public class FixedIntervalRetryPolicy implements RetryPolicy, HttpResponseCode {
+  private static final long serialVersionUID = -2861245183561727283L;
+  private final HttpClientConfiguration conf;
+
+  public FixedIntervalRetryPolicy(HttpClientConfiguration conf) {
+    this.conf = conf;
+  }
+
+  @Override
+  public long nextDelayMillis(int retriedCount, long elapsedMillis, HttpResponse res,
+      IOException ioe) {
+    if (retriedCount >= conf.getHttpRetryCount()) {
+      return -1;
+    }
+    if (res != null) {
+      int responseCode = res.getStatusCode();
+      if (responseCode == ENHANCE_YOUR_CLAIM || responseCode == BAD_REQUEST
+          || responseCode < INTERNAL_SERVER_ERROR) {
+        return -1;
+      }
+    }
+    return conf.getHttpRetryIntervalSeconds() * 1000L;
+  }
+}
@@ -16,8 +16,13 @@ package dmm4j.http;
 
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import dmm4j.DmmException;
+import dmm4j.log.Logger;
 
 /**
  * A utility class to handle HTTP request/response.
@@ -31,6 +36,56 @@ public interface HttpClient {
 
   HttpResponse request(HttpRequest req) throws DmmException;
 
+  /**
+   * Issues the request on the dispatcher configured with async.dispatcherImpl.
+   * Implementations without a dispatcher run {@link #request(HttpRequest)} on the common pool.
+   *
+   * @param req the request
+   * @return a future completed with the response, or exceptionally with DmmException
+   */
+  default CompletableFuture<HttpResponse> requestAsync(final HttpRequest req) {
+    return CompletableFuture.supplyAsync(new Supplier<HttpResponse>() {
+      @Override
+      public HttpResponse get() {
+        try {
+          return request(req);
+        } catch (DmmException de) {
+          throw new CompletionException(de);
+        }
+      }
+    });
+  }
+
+  /**
+   * Issues the request on the dispatcher and notifies the listener with the outcome.
+   *
+   * @param req the request
+   * @param listener listener to be notified on the dispatcher thread
+   */
+  default void requestAsync(final HttpRequest req, final HttpResponseListener listener) {
+    requestAsync(req).whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+      @Override
+      public void accept(HttpResponse res, Throwable th) {
+        DmmException de = null;
+        if (th != null) {
+          Throwable cause = th;
+          if (!(cause instanceof DmmException) && cause.getCause() != null) {
+            // unwrap CompletionException
+            cause = cause.getCause();
+          }
+          de = cause instanceof DmmException ? (DmmException) cause
+              : new DmmException(cause.getMessage(), cause);
+        }
+        try {
+          listener.httpResponseReceived(new HttpResponseEvent(req, res, de));
+        } catch (RuntimeException re) {
+          Logger.getLogger(HttpClient.class)
+              .warn("Exception at HttpResponseListener: ", re.getMessage());
+        }
+      }
+    });
+  }
+
   HttpResponse get(String url) throws DmmException;
 
   HttpResponse post(String url) throws DmmException;
@@ -40,4 +95,12 @@ public interface HttpClient {
   HttpResponse head(String url) throws DmmException;
 
   HttpResponse put(String url) throws DmmException;
+
+  /**
+   * Releases the resources the client owns, such as its async dispatcher and pooled connections.
+   * The client must not be used afterwards. Clients obtained from HttpClientFactory are released
+   * with {@link HttpClientFactory#shutdown(HttpClientConfiguration)}. Does nothing by default.
+   */
+  default void shutdown() {
+  }
 }
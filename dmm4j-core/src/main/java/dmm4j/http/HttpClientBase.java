@@ -4,9 +4,29 @@ package dmm4j.http;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
+import dmm4j.Dispatcher;
+import dmm4j.DispatcherFactory;
 import dmm4j.DmmException;
 import dmm4j.Version;
 import dmm4j.log.Logger;
@@ -16,7 +36,61 @@ public abstract class HttpClientBase implements HttpClient, Serializable {
   private static final long serialVersionUID = -8016974810651763053L;
   protected final HttpClientConfiguration CONF;
 
+  /**
+   * timer for delayed work such as retry backoff and idle connection eviction
+   */
+  static final ScheduledExecutorService SCHEDULER = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "Dmm4J Scheduler");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
   private final Map<String, String> requestHeaders;
+  private transient Dispatcher dispatcher;
+  private transient volatile ConcurrentHashMap<String, RateLimiter> rateLimiters;
+  private transient volatile Map<String, Quota> quotas;
+  private transient Map<String, Validator> validators;
+  private final AtomicLong notModifiedCount = new AtomicLong();
+  private transient volatile ConcurrentHashMap<HttpRequest, CompletableFuture<HttpResponse>>
+      inFlight;
+  private final AtomicLong coalescedCount = new AtomicLong();
+
+  /**
+   * validators and body of the last full response to a GET
+   */
+  private static final class Validator {
+    final String etag;
+    final String lastModified;
+    final int statusCode;
+    final Map<String, List<String>> headerFields;
+    final String body;
+
+    Validator(String etag, String lastModified, int statusCode,
+        Map<String, List<String>> headerFields, String body) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.statusCode = statusCode;
+      this.headerFields = headerFields;
+      this.body = body;
+    }
+  }
+
+  /**
+   * rate and burst configured for a credential with http.rateLimits
+   */
+  private static final class Quota {
+    final double rate;
+    final int burst;
+
+    Quota(double rate, int burst) {
+      this.rate = rate;
+      this.burst = burst;
+    }
+  }
 
   public HttpClientBase(HttpClientConfiguration conf) {
     this.CONF = conf;
@@ -49,11 +123,548 @@ public abstract class HttpClientBase implements HttpClient, Serializable {
   }
 
   public final HttpResponse request(HttpRequest req) throws DmmException {
+    ConcurrentHashMap<HttpRequest, CompletableFuture<HttpResponse>> calls = inFlight(req);
+    if (calls == null) {
+      return execute(req);
+    }
+    CompletableFuture<HttpResponse> call = new CompletableFuture<HttpResponse>();
+    CompletableFuture<HttpResponse> leader = calls.putIfAbsent(req, call);
+    if (leader != null) {
+      coalescedCount.incrementAndGet();
+      return ownCopy(await(leader));
+    }
+    try {
+      HttpResponse res = shareable(execute(req));
+      call.complete(res);
+      return res;
+    } catch (DmmException de) {
+      call.completeExceptionally(de);
+      throw de;
+    } catch (RuntimeException re) {
+      call.completeExceptionally(re);
+      throw re;
+    } finally {
+      calls.remove(req, call);
+    }
+  }
+
+  private HttpResponse execute(HttpRequest req) throws DmmException {
+    String key = validatorKey(req);
+    if (key == null) {
+      return dispatch(req);
+    }
+    Validator validator = getValidator(key);
+    return revalidated(key, validator, dispatch(conditional(req, validator)));
+  }
+
+  private HttpResponse dispatch(HttpRequest req) throws DmmException {
+    acquirePermit(req);
     return handleRequest(req);
   }
 
+  /**
+   * Takes a permit of the rate limiter for one attempt at the request, retries included, waiting
+   * for it or failing as http.rateLimitBlocking says.
+   *
+   * @param req the request
+   * @throws DmmException if no permit is left and http.rateLimitBlocking is false, or interrupted
+   */
+  void acquirePermit(HttpRequest req) throws DmmException {
+    RateLimiter limiter = getRateLimiter(req);
+    if (limiter != null) {
+      if (CONF.isHttpRateLimitBlocking()) {
+        try {
+          limiter.acquire();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new DmmException("Interrupted while waiting for the rate limiter", ie);
+        }
+      } else if (!limiter.tryAcquire()) {
+        throw rateLimitExceeded(req);
+      }
+    }
+  }
+
+  /**
+   * Runs the task once a permit for the request is available, waiting on the timer rather than on
+   * a dispatcher thread. Fails the future instead if no permit is left and http.rateLimitBlocking
+   * is false.
+   *
+   * @param req the request
+   * @param future the future of the request
+   * @param task one attempt at the request
+   */
+  void whenPermitted(HttpRequest req, CompletableFuture<HttpResponse> future, Runnable task) {
+    RateLimiter limiter = getRateLimiter(req);
+    if (limiter == null) {
+      task.run();
+    } else if (CONF.isHttpRateLimitBlocking()) {
+      long waitNanos = limiter.reserve();
+      if (waitNanos == 0) {
+        task.run();
+      } else {
+        SCHEDULER.schedule(task, waitNanos, TimeUnit.NANOSECONDS);
+      }
+    } else if (limiter.tryAcquire()) {
+      task.run();
+    } else {
+      future.completeExceptionally(rateLimitExceeded(req));
+    }
+  }
+
   abstract HttpResponse handleRequest(HttpRequest req) throws DmmException;
 
+  public CompletableFuture<HttpResponse> requestAsync(final HttpRequest req) {
+    final ConcurrentHashMap<HttpRequest, CompletableFuture<HttpResponse>> calls = inFlight(req);
+    if (calls == null) {
+      return executeAsync(req);
+    }
+    final CompletableFuture<HttpResponse> call = new CompletableFuture<HttpResponse>();
+    CompletableFuture<HttpResponse> leader = calls.putIfAbsent(req, call);
+    if (leader != null) {
+      coalescedCount.incrementAndGet();
+      // a dependent future, so that a caller cancelling its future does not affect the others
+      return leader.thenApply(new Function<HttpResponse, HttpResponse>() {
+        @Override
+        public HttpResponse apply(HttpResponse res) {
+          return ownCopy(res);
+        }
+      });
+    }
+    executeAsync(req).whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+      @Override
+      public void accept(HttpResponse res, Throwable th) {
+        calls.remove(req, call);
+        if (th != null) {
+          call.completeExceptionally(th instanceof CompletionException && th.getCause() != null
+              ? th.getCause() : th);
+          return;
+        }
+        try {
+          call.complete(shareable(res));
+        } catch (DmmException de) {
+          call.completeExceptionally(de);
+        }
+      }
+    });
+    return call.thenApply(Function.<HttpResponse>identity());
+  }
+
+  private CompletableFuture<HttpResponse> executeAsync(final HttpRequest req) {
+    final String key = validatorKey(req);
+    if (key == null) {
+      return dispatchAsync(req);
+    }
+    final Validator validator = getValidator(key);
+    return dispatchAsync(conditional(req, validator)).thenApply(
+        new Function<HttpResponse, HttpResponse>() {
+          @Override
+          public HttpResponse apply(HttpResponse res) {
+            try {
+              return revalidated(key, validator, res);
+            } catch (DmmException de) {
+              throw new CompletionException(de);
+            }
+          }
+        });
+  }
+
+  private CompletableFuture<HttpResponse> dispatchAsync(final HttpRequest req) {
+    final CompletableFuture<HttpResponse> future = new CompletableFuture<HttpResponse>();
+    whenPermitted(req, future, new Runnable() {
+      @Override
+      public void run() {
+        handleRequestAsync(req, future);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Completes the future with the response on the dispatcher. Implementations may override this to
+   * avoid holding a dispatcher thread while waiting between retries.
+   *
+   * @param req the request
+   * @param future the future to be completed
+   */
+  void handleRequestAsync(final HttpRequest req, final CompletableFuture<HttpResponse> future) {
+    invokeAttempt(future, new Runnable() {
+      @Override
+      public void run() {
+        if (future.isDone()) {
+          // cancelled before it was dispatched
+          return;
+        }
+        try {
+          future.complete(handleRequest(req));
+        } catch (DmmException de) {
+          future.completeExceptionally(de);
+        } catch (RuntimeException re) {
+          future.completeExceptionally(new DmmException(re));
+        }
+      }
+    });
+  }
+
+  /**
+   * Runs an attempt at a request on the dispatcher. The attempt is passed as a FutureTask, so the
+   * future of the request fails rather than hangs if the dispatcher is shut down and cancels it
+   * before it runs.
+   *
+   * @param future the future of the request
+   * @param attempt the attempt, which completes the future
+   */
+  void invokeAttempt(final CompletableFuture<HttpResponse> future, Runnable attempt) {
+    FutureTask<Void> task = new FutureTask<Void>(attempt, null) {
+      @Override
+      protected void done() {
+        if (isCancelled()) {
+          future.completeExceptionally(
+              new DmmException("The dispatcher was shut down before the request was sent"));
+          return;
+        }
+        try {
+          get();
+        } catch (ExecutionException ee) {
+          future.completeExceptionally(ee.getCause());
+        } catch (InterruptedException ignore) {
+          // done, so get() does not wait
+        }
+      }
+    };
+    try {
+      getDispatcher().invokeLater(task);
+    } catch (RejectedExecutionException ree) {
+      future.completeExceptionally(
+          new DmmException("The dispatcher was shut down before the request was sent", ree));
+    }
+  }
+
+  /**
+   * instantiates the RetryPolicy named by http.retryPolicy
+   *
+   * @param conf configuration
+   * @return retry policy
+   */
+  static RetryPolicy newRetryPolicy(HttpClientConfiguration conf) {
+    try {
+      return (RetryPolicy) Class.forName(conf.getHttpRetryPolicy())
+          .getConstructor(HttpClientConfiguration.class).newInstance(conf);
+    } catch (ClassNotFoundException e) {
+      throw new AssertionError(e);
+    } catch (NoSuchMethodException e) {
+      throw new AssertionError(e);
+    } catch (InstantiationException e) {
+      throw new AssertionError(e);
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    } catch (InvocationTargetException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * @param req request
+   * @return calls in flight to join, or null if the request is not to be coalesced
+   */
+  private ConcurrentHashMap<HttpRequest, CompletableFuture<HttpResponse>> inFlight(
+      HttpRequest req) {
+    if (!CONF.isHttpCoalescingEnabled() || req.getMethod() != RequestMethod.GET) {
+      return null;
+    }
+    ConcurrentHashMap<HttpRequest, CompletableFuture<HttpResponse>> calls = inFlight;
+    if (calls == null) {
+      synchronized (this) {
+        if (inFlight == null) {
+          inFlight = new ConcurrentHashMap<HttpRequest, CompletableFuture<HttpResponse>>();
+        }
+        calls = inFlight;
+      }
+    }
+    return calls;
+  }
+
+  /**
+   * @return the response with its body buffered, so that it can be handed to several callers
+   */
+  private HttpResponse shareable(HttpResponse res) throws DmmException {
+    if (res instanceof CachedHttpResponse) {
+      return res;
+    }
+    return new CachedHttpResponse(res.getStatusCode(),
+        new LinkedHashMap<String, List<String>>(res.getResponseHeaderFields()), res.asString(),
+        CONF);
+  }
+
+  /**
+   * @param shared the response of the leading call
+   * @return a response of its own for a coalesced caller, so that parsed JSON is not shared
+   */
+  private static HttpResponse ownCopy(HttpResponse shared) {
+    return ((CachedHttpResponse) shared).copy();
+  }
+
+  private static HttpResponse await(CompletableFuture<HttpResponse> call) throws DmmException {
+    try {
+      return call.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new DmmException("Interrupted while waiting for an identical request", ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof DmmException) {
+        throw (DmmException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new DmmException(cause.getMessage(), cause);
+    }
+  }
+
+  /**
+   * @return number of requests which joined an identical request already in flight
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * @param req request
+   * @return key to remember the validators of the request with, or null if conditional GET does
+   *         not apply
+   */
+  private String validatorKey(HttpRequest req) {
+    if (!CONF.isHttpConditionalGetEnabled()) {
+      return null;
+    }
+    return CachingHttpClient.cacheKey(req);
+  }
+
+  private Validator getValidator(String key) {
+    synchronized (this) {
+      if (validators == null) {
+        final int maxEntries = Math.max(1, CONF.getHttpCacheMaxEntries());
+        validators = new LinkedHashMap<String, Validator>(16, 0.75f, true) {
+          private static final long serialVersionUID = 4378513265432829761L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Validator> eldest) {
+            return size() > maxEntries;
+          }
+        };
+      }
+      return validators.get(key);
+    }
+  }
+
+  /**
+   * @return the request with If-None-Match and If-Modified-Since added from the validator
+   */
+  private static HttpRequest conditional(HttpRequest req, Validator validator) {
+    if (validator == null) {
+      return req;
+    }
+    Map<String, String> headers = new HashMap<String, String>();
+    if (req.getRequestHeaders() != null) {
+      headers.putAll(req.getRequestHeaders());
+    }
+    if (validator.etag != null) {
+      headers.put("If-None-Match", validator.etag);
+    }
+    if (validator.lastModified != null) {
+      headers.put("If-Modified-Since", validator.lastModified);
+    }
+    return new HttpRequest(req.getMethod(), req.getURL(), null, headers);
+  }
+
+  /**
+   * Serves 304 Not Modified from the remembered body and remembers the validators of full
+   * responses.
+   */
+  private HttpResponse revalidated(String key, Validator validator, HttpResponse res)
+      throws DmmException {
+    if (res.getStatusCode() == HttpResponseCode.NOT_MODIFIED && validator != null) {
+      try {
+        res.disconnect();
+      } catch (IOException ignore) {
+      }
+      notModifiedCount.incrementAndGet();
+      logger.debug("Not modified, serving the remembered body: ", key);
+      return new CachedHttpResponse(validator.statusCode, validator.headerFields, validator.body,
+          CONF);
+    }
+    String etag = res.getResponseHeader("ETag");
+    String lastModified = res.getResponseHeader("Last-Modified");
+    if (res.getStatusCode() != HttpResponseCode.OK || (etag == null && lastModified == null)) {
+      return res;
+    }
+    Validator updated = new Validator(etag, lastModified, res.getStatusCode(),
+        new LinkedHashMap<String, List<String>>(res.getResponseHeaderFields()), res.asString());
+    synchronized (this) {
+      validators.put(key, updated);
+    }
+    return new CachedHttpResponse(updated.statusCode, updated.headerFields, updated.body, CONF);
+  }
+
+  /**
+   * @return number of GETs answered with 304 Not Modified and served from the remembered body
+   */
+  public long getNotModifiedCount() {
+    return notModifiedCount.get();
+  }
+
+  /**
+   * Returns the rate limiter of the credential the request is made with.<br>
+   * Requests are grouped by their api_id and affiliate_id parameters, falling back to the host for
+   * requests without credentials. Each group is limited by http.rateLimit and http.rateLimitBurst
+   * unless http.rateLimits, a comma separated list of credential=rate[:burst] pairs, has an entry
+   * for its api_id/affiliate_id or its api_id. A rate of 0 leaves the credential unlimited.
+   *
+   * @param req the request
+   * @return rate limiter, or null if the credential is not limited
+   */
+  RateLimiter getRateLimiter(HttpRequest req) {
+    Map<String, Quota> quotas = getQuotas();
+    if (CONF.getHttpRateLimit() <= 0 && quotas.isEmpty()) {
+      return null;
+    }
+    ConcurrentHashMap<String, RateLimiter> limiters = rateLimiters;
+    if (limiters == null) {
+      synchronized (this) {
+        if (rateLimiters == null) {
+          rateLimiters = new ConcurrentHashMap<String, RateLimiter>();
+        }
+        limiters = rateLimiters;
+      }
+    }
+    String key = rateLimitKey(req);
+    RateLimiter limiter = limiters.get(key);
+    if (limiter == null) {
+      Quota quota = quotas.get(key);
+      int slash = key.indexOf('/');
+      if (quota == null && slash != -1) {
+        quota = quotas.get(key.substring(0, slash));
+      }
+      double rate = quota != null ? quota.rate : CONF.getHttpRateLimit();
+      if (rate <= 0) {
+        return null;
+      }
+      RateLimiter newLimiter =
+          new RateLimiter(rate, quota != null ? quota.burst : CONF.getHttpRateLimitBurst());
+      limiter = limiters.putIfAbsent(key, newLimiter);
+      if (limiter == null) {
+        limiter = newLimiter;
+      }
+    }
+    return limiter;
+  }
+
+  /**
+   * @return rate limiters keyed by api_id/affiliate_id, to monitor the time spent throttled
+   */
+  public Map<String, RateLimiter> getRateLimiters() {
+    ConcurrentHashMap<String, RateLimiter> limiters = rateLimiters;
+    if (limiters == null) {
+      return Collections.emptyMap();
+    }
+    return Collections.<String, RateLimiter>unmodifiableMap(limiters);
+  }
+
+  /**
+   * @return http.rateLimits keyed by credential, parsed on first use
+   */
+  private Map<String, Quota> getQuotas() {
+    Map<String, Quota> parsed = quotas;
+    if (parsed == null) {
+      parsed = new HashMap<String, Quota>();
+      if (CONF.getHttpRateLimits() != null) {
+        for (String pair : CONF.getHttpRateLimits().split(",")) {
+          int eq = pair.lastIndexOf('=');
+          if (eq <= 0) {
+            continue;
+          }
+          String limit = pair.substring(eq + 1).trim();
+          int colon = limit.indexOf(':');
+          try {
+            double rate = Double.parseDouble(colon == -1 ? limit : limit.substring(0, colon));
+            int burst = colon == -1 ? CONF.getHttpRateLimitBurst()
+                : Integer.parseInt(limit.substring(colon + 1));
+            parsed.put(pair.substring(0, eq).trim(), new Quota(rate, burst));
+          } catch (NumberFormatException nfe) {
+            logger.warn("Ignoring malformed http.rateLimits entry: ", pair);
+          }
+        }
+      }
+      quotas = parsed;
+    }
+    return parsed;
+  }
+
+  private static String rateLimitKey(HttpRequest req) {
+    String apiId = null;
+    String affiliateId = null;
+    if (req.getParameters() != null) {
+      for (HttpParameter param : req.getParameters()) {
+        if ("api_id".equals(param.getName())) {
+          apiId = param.getValue();
+        } else if ("affiliate_id".equals(param.getName())) {
+          affiliateId = param.getValue();
+        }
+      }
+    }
+    String url = req.getURL();
+    int query = url.indexOf('?');
+    if (query != -1 && (apiId == null || affiliateId == null)) {
+      for (String pair : url.substring(query + 1).split("&")) {
+        if (apiId == null && pair.startsWith("api_id=")) {
+          apiId = pair.substring("api_id=".length());
+        } else if (affiliateId == null && pair.startsWith("affiliate_id=")) {
+          affiliateId = pair.substring("affiliate_id=".length());
+        }
+      }
+    }
+    if (apiId == null && affiliateId == null) {
+      try {
+        return new URL(url).getHost();
+      } catch (java.net.MalformedURLException mue) {
+        return "";
+      }
+    }
+    return apiId + "/" + affiliateId;
+  }
+
+  private static DmmException rateLimitExceeded(HttpRequest req) {
+    return new DmmException("Client side rate limit exceeded: " + req.getURL(), null,
+        HttpResponseCode.TOO_MANY_REQUESTS);
+  }
+
+  /**
+   * returns the dispatcher for asynchronous requests, creating it on first use
+   *
+   * @return dispatcher
+   */
+  synchronized Dispatcher getDispatcher() {
+    if (dispatcher == null) {
+      dispatcher = new DispatcherFactory(CONF.getConfiguration()).getInstance();
+    }
+    return dispatcher;
+  }
+
+  /**
+   * shuts down the dispatcher if one was created
+   */
+  public void shutdown() {
+    Dispatcher created;
+    synchronized (this) {
+      created = dispatcher;
+      dispatcher = null;
+    }
+    if (created != null) {
+      created.shutdown();
+    }
+  }
+
   public HttpResponse get(String url) throws DmmException {
     return request(new HttpRequest(RequestMethod.GET, url, null, this.requestHeaders));
   }
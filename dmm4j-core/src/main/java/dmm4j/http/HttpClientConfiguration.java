@@ -14,6 +14,8 @@
 
 package dmm4j.http;
 
+import dmm4j.conf.Configuration;
+
 public interface HttpClientConfiguration {
 
   String getHttpProxyHost();
@@ -32,7 +34,54 @@ public interface HttpClientConfiguration {
 
   int getHttpRetryIntervalSeconds();
 
+  int getHttpRetryMaxIntervalSeconds();
+
+  int getHttpRetryMaxElapsedSeconds();
+
+  String getHttpRetryPolicy();
+
   boolean isPrettyDebugEnabled();
 
   boolean isGZIPEnabled();
+
+  int getHttpMaxConnectionsPerRoute();
+
+  int getHttpMaxTotalConnections();
+
+  int getHttpConnectionIdleTimeout();
+
+  int getHttpConnectionValidateAfterInactivity();
+
+  double getHttpRateLimit();
+
+  int getHttpRateLimitBurst();
+
+  boolean isHttpRateLimitBlocking();
+
+  String getHttpRateLimits();
+
+  boolean isHttpCacheEnabled();
+
+  int getHttpCacheMaxEntries();
+
+  int getHttpCacheTTLSeconds();
+
+  String getHttpCacheTTLs();
+
+  String getHttpCacheDirectory();
+
+  long getHttpCacheMaxBytes();
+
+  boolean isHttpConditionalGetEnabled();
+
+  boolean isHttpCoalescingEnabled();
+
+  boolean isHttpCompactJSONEnabled();
+
+  boolean isHttpLazyJSONEnabled();
+
+  /**
+   * @return the configuration this belongs to, whose async settings the client dispatches with
+   */
+  Configuration getConfiguration();
 }
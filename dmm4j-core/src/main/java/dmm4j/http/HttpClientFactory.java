@@ -18,7 +18,9 @@ import dmm4j.conf.ConfigurationContext;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public final class HttpClientFactory {
   private static final Constructor<?> HTTP_CLIENT_CONSTRUCTOR;
@@ -54,20 +56,79 @@ public final class HttpClientFactory {
     }
   }
 
-  private final static HashMap<HttpClientConfiguration, HttpClient> confClientMap =
-      new HashMap<HttpClientConfiguration, HttpClient>();
+  /**
+   * one client per configuration, created at most once even when first requested concurrently
+   */
+  private final static ConcurrentHashMap<Object, HttpClient> confClientMap =
+      new ConcurrentHashMap<Object, HttpClient>();
 
   public static HttpClient getInstance() {
     return getInstance(ConfigurationContext.getInstance().getHttpClientConfiguration());
   }
 
-  public static HttpClient getInstance(HttpClientConfiguration conf) {
-    HttpClient client = confClientMap.get(conf);
+  public static HttpClient getInstance(final HttpClientConfiguration conf) {
+    Object key = registryKey(conf);
+    // plain get first, as computeIfAbsent locks the bin even when the key is present
+    HttpClient client = confClientMap.get(key);
+    if (client == null) {
+      client = confClientMap.computeIfAbsent(key, new Function<Object, HttpClient>() {
+        @Override
+        public HttpClient apply(Object key) {
+          return newClient(conf);
+        }
+      });
+    }
+    return client;
+  }
+
+  /**
+   * Returns the key clients for the configuration are registered under. HttpClientConfiguration
+   * equality only covers the connection settings, so clients are keyed on the configuration it
+   * belongs to, which covers the cache, rate limit, retry, pool and async settings as well.
+   *
+   * @param conf configuration of the client
+   * @return the owning configuration, or conf itself if it has none
+   */
+  static Object registryKey(HttpClientConfiguration conf) {
+    Object owner = conf.getConfiguration();
+    return owner != null ? owner : conf;
+  }
+
+  /**
+   * Removes the client for the configuration and shuts it down. A later getInstance call with
+   * the configuration creates a new client.
+   *
+   * @param conf configuration of the client
+   * @return true if there was a client for the configuration
+   */
+  public static boolean shutdown(HttpClientConfiguration conf) {
+    HttpClient client = confClientMap.remove(registryKey(conf));
+    if (client == null) {
+      return false;
+    }
+    client.shutdown();
+    return true;
+  }
+
+  /**
+   * removes and shuts down all clients created by this factory
+   */
+  public static void shutdownAll() {
+    Iterator<HttpClient> clients = confClientMap.values().iterator();
+    while (clients.hasNext()) {
+      HttpClient client = clients.next();
+      clients.remove();
+      client.shutdown();
+    }
+  }
+
+  private static HttpClient newClient(HttpClientConfiguration conf) {
     try {
-      if (client == null) {
-        client = (HttpClient) HTTP_CLIENT_CONSTRUCTOR.newInstance(conf);
-        confClientMap.put(conf, client);
+      HttpClient client = (HttpClient) HTTP_CLIENT_CONSTRUCTOR.newInstance(conf);
+      if (conf.isHttpCacheEnabled()) {
+        client = new CachingHttpClient(client, conf);
       }
+      return client;
     } catch (InstantiationException e) {
       throw new AssertionError(e);
     } catch (IllegalAccessException e) {
@@ -75,6 +136,5 @@ public final class HttpClientFactory {
     } catch (InvocationTargetException e) {
       throw new AssertionError(e);
     }
-    return client;
   }
 }
@@ -20,9 +20,12 @@ import dmm4j.log.Logger;
 
 import java.io.*;
 import java.net.*;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * @author Hiroki Uchida
@@ -46,23 +49,30 @@ class HttpClientImpl extends HttpClientBase implements HttpResponseCode, java.io
   }
 
   private static final long serialVersionUID = -403500272719330534L;
+  private final RetryPolicy retryPolicy;
 
   public HttpClientImpl() {
-    super(ConfigurationContext.getInstance().getHttpClientConfiguration());
+    this(ConfigurationContext.getInstance().getHttpClientConfiguration());
   }
 
   public HttpClientImpl(HttpClientConfiguration conf) {
     super(conf);
+    this.retryPolicy = newRetryPolicy(conf);
   }
 
-  private static final Map<HttpClientConfiguration, HttpClient> instanceMap =
-      new HashMap<HttpClientConfiguration, HttpClient>(1);
+  private static final ConcurrentHashMap<Object, HttpClient> instanceMap =
+      new ConcurrentHashMap<Object, HttpClient>(1);
 
-  public static HttpClient getInstance(HttpClientConfiguration conf) {
-    HttpClient client = instanceMap.get(conf);
+  public static HttpClient getInstance(final HttpClientConfiguration conf) {
+    Object key = HttpClientFactory.registryKey(conf);
+    HttpClient client = instanceMap.get(key);
     if (null == client) {
-      client = new HttpClientImpl(conf);
-      instanceMap.put(conf, client);
+      client = instanceMap.computeIfAbsent(key, new Function<Object, HttpClient>() {
+        @Override
+        public HttpClient apply(Object key) {
+          return new HttpClientImpl(conf);
+        }
+      });
     }
     return client;
   }
@@ -77,117 +87,189 @@ class HttpClientImpl extends HttpClientBase implements HttpResponseCode, java.io
 
   @Override
   public HttpResponse handleRequest(HttpRequest req) throws DmmException {
-    int retriedCount;
-    int retry = CONF.getHttpRetryCount() + 1;
-    HttpResponse res = null;
-    for (retriedCount = 0; retriedCount < retry; retriedCount++) {
-      int responseCode = -1;
+    long started = System.currentTimeMillis();
+    for (int retriedCount = 0;; retriedCount++) {
+      if (retriedCount > 0) {
+        // retries are rate limited like the first attempt, which dispatch() took a permit for
+        acquirePermit(req);
+      }
+      HttpResponse res = null;
+      IOException ioe = null;
       try {
-        HttpURLConnection con;
-        OutputStream os = null;
-        try {
-          con = getConnection(req.getURL());
-          con.setDoInput(true);
-          setHeaders(req, con);
-          con.setRequestMethod(req.getMethod().name());
-          if (req.getMethod() == RequestMethod.POST) {
-            if (HttpParameter.containsFile(req.getParameters())) {
-              String boundary = "----dmm4j-upload" + System.currentTimeMillis();
-              con.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-              boundary = "--" + boundary;
-              con.setDoOutput(true);
-              os = con.getOutputStream();
-              DataOutputStream out = new DataOutputStream(os);
-              for (HttpParameter param : req.getParameters()) {
-                if (param.isFile()) {
-                  write(out, boundary + "\r\n");
-                  write(out, "Content-Disposition: form-data; name=\"" + param.getName()
-                      + "\"; filename=\"" + param.getFile().getName() + "\"\r\n");
-                  write(out, "Content-Type: " + param.getContentType() + "\r\n\r\n");
-                  BufferedInputStream in =
-                      new BufferedInputStream(param.hasFileBody() ? param.getFileBody()
-                          : new FileInputStream(param.getFile()));
-                  byte[] buff = new byte[1024];
-                  int length;
-                  while ((length = in.read(buff)) != -1) {
-                    out.write(buff, 0, length);
-                  }
-                  write(out, "\r\n");
-                  in.close();
-                } else {
-                  write(out, boundary + "\r\n");
-                  write(out, "Content-Disposition: form-data; name=\"" + param.getName() + "\"\r\n");
-                  write(out, "Content-Type: text/plain; charset=UTF-8\r\n\r\n");
-                  logger.debug(param.getValue());
-                  out.write(param.getValue().getBytes("UTF-8"));
-                  write(out, "\r\n");
-                }
-              }
-              write(out, boundary + "--\r\n");
-              write(out, "\r\n");
+        res = send(req);
+        logResponse(res);
+        if (isSuccessful(res.getStatusCode())) {
+          return res;
+        }
+      } catch (IOException e) {
+        // connection timeout or read timeout
+        ioe = e;
+      }
+      long delay = retryDelay(res, ioe, retriedCount, started);
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new DmmException("Interrupted while waiting for the next retry", ie);
+      }
+    }
+  }
 
-            } else {
-              con.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-              String postParam = HttpParameter.encodeParameters(req.getParameters());
-              logger.debug("Post Params: ", postParam);
-              byte[] bytes = postParam.getBytes("UTF-8");
-              con.setRequestProperty("Content-Length", Integer.toString(bytes.length));
-              con.setDoOutput(true);
-              os = con.getOutputStream();
-              os.write(bytes);
+  @Override
+  void handleRequestAsync(HttpRequest req, CompletableFuture<HttpResponse> future) {
+    attemptAsync(req, future, 0, System.currentTimeMillis());
+  }
+
+  /**
+   * Runs a single attempt on the dispatcher. Retries are scheduled on a timer, so no thread is held
+   * while backing off, and take a permit of the rate limiter before they run.
+   */
+  private void attemptAsync(final HttpRequest req, final CompletableFuture<HttpResponse> future,
+      final int retriedCount, final long started) {
+    invokeAttempt(future, new Runnable() {
+      @Override
+      public void run() {
+        if (future.isDone()) {
+          // cancelled by the caller
+          return;
+        }
+        try {
+          HttpResponse res = null;
+          IOException ioe = null;
+          try {
+            res = send(req);
+            logResponse(res);
+            if (isSuccessful(res.getStatusCode())) {
+              future.complete(res);
+              return;
             }
-            os.flush();
-            os.close();
+          } catch (IOException e) {
+            ioe = e;
           }
-          res = new HttpResponseImpl(con, CONF);
-          responseCode = con.getResponseCode();
-          if (logger.isDebugEnabled()) {
-            logger.debug("Response: ");
-            Map<String, List<String>> responseHeaders = con.getHeaderFields();
-            for (String key : responseHeaders.keySet()) {
-              List<String> values = responseHeaders.get(key);
-              for (String value : values) {
-                if (key != null) {
-                  logger.debug(key + ": " + value);
-                } else {
-                  logger.debug(value);
-                }
-              }
+          long delay = retryDelay(res, ioe, retriedCount, started);
+          final Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+              attemptAsync(req, future, retriedCount + 1, started);
             }
-          }
-          if (responseCode < OK || (responseCode != FOUND && MULTIPLE_CHOICES <= responseCode)) {
-            if (responseCode == ENHANCE_YOUR_CLAIM || responseCode == BAD_REQUEST
-                || responseCode < INTERNAL_SERVER_ERROR || retriedCount == CONF.getHttpRetryCount()) {
-              throw new DmmException(res.asString(), res);
+          };
+          SCHEDULER.schedule(new Runnable() {
+            @Override
+            public void run() {
+              whenPermitted(req, future, retry);
             }
-            // will retry if the status code is INTERNAL_SERVER_ERROR
+          }, delay, TimeUnit.MILLISECONDS);
+        } catch (DmmException de) {
+          future.completeExceptionally(de);
+        } catch (RuntimeException re) {
+          future.completeExceptionally(new DmmException(re));
+        }
+      }
+    });
+  }
+
+  private static boolean isSuccessful(int responseCode) {
+    return OK <= responseCode && (responseCode == FOUND || responseCode == NOT_MODIFIED
+        || responseCode < MULTIPLE_CHOICES);
+  }
+
+  /**
+   * Consults the RetryPolicy about a failed attempt.
+   *
+   * @param res response with an error status, or null
+   * @param ioe exception the attempt failed with, or null
+   * @param retriedCount number of retries performed so far
+   * @param started time the first attempt started
+   * @return milliseconds to wait until the next attempt
+   * @throws DmmException if the request should not be retried
+   */
+  private long retryDelay(HttpResponse res, IOException ioe, int retriedCount, long started)
+      throws DmmException {
+    long delay =
+        retryPolicy.nextDelayMillis(retriedCount, System.currentTimeMillis() - started, res, ioe);
+    if (delay < 0) {
+      if (res != null) {
+        throw new DmmException(res.asString(), res);
+      }
+      throw new DmmException(ioe.getMessage(), ioe, -1);
+    }
+    if (res != null) {
+      // consume the error body so that the connection can be reused
+      try {
+        res.asString();
+      } catch (DmmException ignore) {
+      }
+    }
+    logger.debug("Sleeping " + delay + " milliseconds until the next retry.");
+    return delay;
+  }
+
+  private void logResponse(HttpResponse res) {
+    if (logger.isDebugEnabled()) {
+      logger.debug("Response: ");
+      Map<String, List<String>> responseHeaders = res.getResponseHeaderFields();
+      for (String key : responseHeaders.keySet()) {
+        List<String> values = responseHeaders.get(key);
+        for (String value : values) {
+          if (key != null) {
+            logger.debug(key + ": " + value);
           } else {
-            break;
-          }
-        } finally {
-          try {
-            os.close();
-          } catch (Exception ignore) {
+            logger.debug(value);
           }
         }
-      } catch (IOException ioe) {
-        // connection timeout or read timeout
-        if (retriedCount == CONF.getHttpRetryCount()) {
-          throw new DmmException(ioe.getMessage(), ioe, responseCode);
+      }
+    }
+  }
+
+  /**
+   * Performs a single HTTP round trip without any retry handling.
+   *
+   * @param req The request
+   * @return the response, regardless of its status code
+   * @throws IOException when the connection fails or times out
+   */
+  HttpResponse send(HttpRequest req) throws IOException {
+    HttpURLConnection con;
+    OutputStream os = null;
+    try {
+      con = getConnection(req.getURL());
+      con.setDoInput(true);
+      setHeaders(req, con);
+      con.setRequestMethod(req.getMethod().name());
+      if (req.getMethod() == RequestMethod.POST) {
+        if (HttpParameter.containsFile(req.getParameters())) {
+          MultipartEncoder multipart = new MultipartEncoder(req.getParameters());
+          con.setRequestProperty("Content-Type", multipart.getContentType());
+          // stream the body instead of letting the connection buffer it whole
+          long length = multipart.getContentLength();
+          if (length >= 0) {
+            con.setFixedLengthStreamingMode(length);
+          } else {
+            con.setChunkedStreamingMode(0);
+          }
+          con.setDoOutput(true);
+          os = con.getOutputStream();
+          multipart.writeTo(os);
+        } else {
+          con.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+          String postParam = HttpParameter.encodeParameters(req.getParameters());
+          logger.debug("Post Params: ", postParam);
+          byte[] bytes = postParam.getBytes("UTF-8");
+          con.setRequestProperty("Content-Length", Integer.toString(bytes.length));
+          con.setDoOutput(true);
+          os = con.getOutputStream();
+          os.write(bytes);
         }
+        os.flush();
+        os.close();
       }
+      return new HttpResponseImpl(con, CONF);
+    } finally {
       try {
-        if (logger.isDebugEnabled() && res != null) {
-          res.asString();
-        }
-        logger.debug("Sleeping " + CONF.getHttpRetryIntervalSeconds()
-            + " seconds until the next retry.");
-        Thread.sleep(CONF.getHttpRetryIntervalSeconds() * 1000);
-      } catch (InterruptedException ignore) {
-        // nothing to do
+        os.close();
+      } catch (Exception ignore) {
       }
     }
-    return res;
   }
 
   /**
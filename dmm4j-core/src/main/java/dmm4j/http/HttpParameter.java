@@ -16,15 +16,36 @@ package dmm4j.http;
 
 import java.io.File;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.util.List;
+
+import dmm4j.util.BufferPool;
+
 /**
  * A data class representing HTTP Post parameter
  *
  */
 public final class HttpParameter implements Comparable<HttpParameter>, java.io.Serializable {
   private static final long serialVersionUID = 4046908449190454692L;
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+  /**
+   * ALPHA / DIGIT / "-" / "." / "_" / "~" of RFC 3986, indexed by ASCII code
+   */
+  private static final boolean[] UNRESERVED = new boolean[128];
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) {
+      UNRESERVED[c] = true;
+      UNRESERVED[c - 'a' + 'A'] = true;
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      UNRESERVED[c] = true;
+    }
+    UNRESERVED['-'] = true;
+    UNRESERVED['.'] = true;
+    UNRESERVED['_'] = true;
+    UNRESERVED['~'] = true;
+  }
+
   private String name = null;
   private String value = null;
   private File file = null;
@@ -226,22 +247,42 @@ public final class HttpParameter implements Comparable<HttpParameter>, java.io.S
     if (null == httpParams) {
       return "";
     }
-    StringBuilder buf = new StringBuilder();
+    StringBuilder buf = BufferPool.takeBuilder();
+    try {
+      return encodeParameters(httpParams, buf).toString();
+    } finally {
+      BufferPool.release(buf);
+    }
+  }
+
+  /**
+   * Appends the parameters to buf in application/x-www-form-urlencoded form.
+   *
+   * @param httpParams text parameters, or null
+   * @param buf destination
+   * @return buf
+   */
+  public static StringBuilder encodeParameters(HttpParameter[] httpParams, StringBuilder buf) {
+    if (null == httpParams) {
+      return buf;
+    }
     for (int j = 0; j < httpParams.length; j++) {
       if (httpParams[j].isFile()) {
-        throw new IllegalArgumentException("parameter [" + httpParams[j].name + "]should be text");
+        throw new IllegalArgumentException("parameter [" + httpParams[j].name
+            + "]should be text");
       }
       if (j != 0) {
-        buf.append("&");
+        buf.append('&');
       }
-      buf.append(encode(httpParams[j].name)).append("=").append(encode(httpParams[j].value));
+      encode(httpParams[j].name, buf).append('=');
+      encode(httpParams[j].value, buf);
     }
-    return buf.toString();
+    return buf;
   }
 
   /**
    * @param value string to be encoded
-   * @return encoded string
+   * @return encoded string, or value itself when it has nothing to escape
    * @see <a href="http://wiki.oauth.net/TestCases">OAuth / TestCases</a>
    * @see <a
    *      href="http://groups.google.com/group/oauth/browse_thread/thread/a8398d0521f4ae3d/9d79b698ab217df2?hl=en&lnk=gst&q=space+encoding#9d79b698ab217df2">Space
@@ -250,27 +291,74 @@ public final class HttpParameter implements Comparable<HttpParameter>, java.io.S
    *      Identifier (URI): Generic Syntax - 2.1. Percent-Encoding</a>
    */
   public static String encode(String value) {
-    String encoded = null;
-    try {
-      encoded = URLEncoder.encode(value, "UTF-8");
-    } catch (UnsupportedEncodingException ignore) {
+    int safe = unreservedPrefix(value);
+    if (safe == value.length()) {
+      return value;
+    }
+    StringBuilder buf = new StringBuilder(value.length() + 16);
+    buf.append(value, 0, safe);
+    return encode(value, safe, buf).toString();
+  }
+
+  /**
+   * Appends value to buf, percent-encoding its UTF-8 bytes except for the unreserved characters
+   * of RFC 3986.
+   *
+   * @param value string to be encoded
+   * @param buf destination
+   * @return buf
+   * @see #encode(String)
+   */
+  public static StringBuilder encode(String value, StringBuilder buf) {
+    int safe = unreservedPrefix(value);
+    buf.append(value, 0, safe);
+    return safe == value.length() ? buf : encode(value, safe, buf);
+  }
+
+  private static int unreservedPrefix(String value) {
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 128 || !UNRESERVED[c]) {
+        return i;
+      }
     }
-    StringBuilder buf = new StringBuilder(encoded.length());
-    char focus;
-    for (int i = 0; i < encoded.length(); i++) {
-      focus = encoded.charAt(i);
-      if (focus == '*') {
-        buf.append("%2A");
-      } else if (focus == '+') {
-        buf.append("%20");
-      } else if (focus == '%' && (i + 1) < encoded.length() && encoded.charAt(i + 1) == '7'
-          && encoded.charAt(i + 2) == 'E') {
-        buf.append('~');
-        i += 2;
+    return length;
+  }
+
+  private static StringBuilder encode(String value, int from, StringBuilder buf) {
+    int length = value.length();
+    for (int i = from; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (UNRESERVED[c]) {
+          buf.append(c);
+        } else {
+          appendEscaped(buf, c);
+        }
+      } else if (c < 0x800) {
+        appendEscaped(buf, 0xC0 | (c >> 6));
+        appendEscaped(buf, 0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        appendEscaped(buf, 0xF0 | (codePoint >> 18));
+        appendEscaped(buf, 0x80 | ((codePoint >> 12) & 0x3F));
+        appendEscaped(buf, 0x80 | ((codePoint >> 6) & 0x3F));
+        appendEscaped(buf, 0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // unpaired surrogate, replaced as String.getBytes("UTF-8") does
+        appendEscaped(buf, '?');
       } else {
-        buf.append(focus);
+        appendEscaped(buf, 0xE0 | (c >> 12));
+        appendEscaped(buf, 0x80 | ((c >> 6) & 0x3F));
+        appendEscaped(buf, 0x80 | (c & 0x3F));
       }
     }
-    return buf.toString();
+    return buf;
+  }
+
+  private static void appendEscaped(StringBuilder buf, int b) {
+    buf.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
   }
 }
@@ -17,6 +17,8 @@ package dmm4j.http;
 import java.util.Arrays;
 import java.util.Map;
 
+import dmm4j.util.BufferPool;
+
 /**
  * HTTP Request parameter object
  */
@@ -31,8 +33,12 @@ public final class HttpRequest implements java.io.Serializable {
 
   private final Map<String, String> requestHeaders;
 
+  /**
+   * hash code worked out in advance by {@link HttpRequestTemplate}, or 0
+   */
+  private final transient int hash;
 
-  private static final HttpParameter[] NULL_PARAMETERS = new HttpParameter[0];
+  static final HttpParameter[] NULL_PARAMETERS = new HttpParameter[0];
 
   /**
    * @param method Specifies the HTTP method
@@ -46,13 +52,33 @@ public final class HttpRequest implements java.io.Serializable {
       Map<String, String> requestHeaders) {
     this.method = method;
     if (method != RequestMethod.POST && parameters != null && parameters.length != 0) {
-      this.url = url + "?" + HttpParameter.encodeParameters(parameters);
+      StringBuilder buf = BufferPool.takeBuilder();
+      try {
+        this.url = HttpParameter.encodeParameters(parameters, buf.append(url).append('?'))
+            .toString();
+      } finally {
+        BufferPool.release(buf);
+      }
       this.parameters = NULL_PARAMETERS;
     } else {
       this.url = url;
       this.parameters = parameters;
     }
     this.requestHeaders = requestHeaders;
+    this.hash = 0;
+  }
+
+  /**
+   * @param url the url including the encoded query
+   * @param hash hash code matching {@link #hashCode()}, or 0
+   */
+  HttpRequest(RequestMethod method, String url, HttpParameter[] parameters,
+      Map<String, String> requestHeaders, int hash) {
+    this.method = method;
+    this.url = url;
+    this.parameters = parameters;
+    this.requestHeaders = requestHeaders;
+    this.hash = hash;
   }
 
   public RequestMethod getMethod() {
@@ -95,6 +121,9 @@ public final class HttpRequest implements java.io.Serializable {
 
   @Override
   public int hashCode() {
+    if (hash != 0) {
+      return hash;
+    }
     int result = method != null ? method.hashCode() : 0;
     result = 31 * result + (url != null ? url.hashCode() : 0);
     result = 31 * result + (parameters != null ? Arrays.hashCode(parameters) : 0);
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import dmm4j.util.BufferPool;
+
+/**
+ * Builds {@link HttpRequest}s to one endpoint which share most of their parameters.<br>
+ * The fixed parameters are encoded once, so each request only encodes the parameters that vary,
+ * and the hash code of each request is worked out from that of the shared prefix.
+ *
+ * <pre>
+ * HttpRequestTemplate template = new HttpRequestTemplate(RequestMethod.GET, url,
+ *     new HttpParameter[] {new HttpParameter("api_id", apiId),
+ *         new HttpParameter("site", "DMM.com")}, client.getRequestHeaders());
+ * HttpResponse res = client.request(template.newRequest(new HttpParameter("keyword", keyword)));
+ * </pre>
+ *
+ * @author nikuyoshi
+ */
+public final class HttpRequestTemplate {
+  private final RequestMethod method;
+  private final String url;
+  private final HttpParameter[] fixedParameters;
+  private final Map<String, String> requestHeaders;
+  /**
+   * url and encoded fixed parameters, for methods sending parameters in the query
+   */
+  private final String prefix;
+  private final char separator;
+  private final int prefixHash;
+
+  /**
+   * @param method Specifies the HTTP method
+   * @param url the url without query
+   * @param fixedParameters parameters shared by every request, or null
+   * @param requestHeaders request headers, copied as they are now
+   */
+  public HttpRequestTemplate(RequestMethod method, String url, HttpParameter[] fixedParameters,
+      Map<String, String> requestHeaders) {
+    this.method = method;
+    this.url = url;
+    this.fixedParameters = fixedParameters == null ? HttpRequest.NULL_PARAMETERS
+        : fixedParameters.clone();
+    this.requestHeaders = requestHeaders == null ? null
+        : Collections.unmodifiableMap(new LinkedHashMap<String, String>(requestHeaders));
+    if (method == RequestMethod.POST || this.fixedParameters.length == 0) {
+      prefix = url;
+      separator = '?';
+    } else {
+      prefix = url + "?" + HttpParameter.encodeParameters(this.fixedParameters);
+      separator = '&';
+    }
+    prefixHash = prefix.hashCode();
+  }
+
+  /**
+   * @param parameters the parameters specific to this request
+   * @return a request carrying the fixed parameters followed by the given ones
+   */
+  public HttpRequest newRequest(HttpParameter... parameters) {
+    if (method == RequestMethod.POST) {
+      return new HttpRequest(method, url, concat(fixedParameters, parameters), requestHeaders);
+    }
+    if (parameters == null || parameters.length == 0) {
+      return new HttpRequest(method, prefix, HttpRequest.NULL_PARAMETERS, requestHeaders,
+          hashOf(prefixHash));
+    }
+    StringBuilder buf = BufferPool.takeBuilder();
+    try {
+      buf.append(prefix).append(separator);
+      HttpParameter.encodeParameters(parameters, buf);
+      int urlHash = prefixHash;
+      for (int i = prefix.length(); i < buf.length(); i++) {
+        urlHash = 31 * urlHash + buf.charAt(i);
+      }
+      return new HttpRequest(method, buf.toString(), HttpRequest.NULL_PARAMETERS,
+          requestHeaders, hashOf(urlHash));
+    } finally {
+      BufferPool.release(buf);
+    }
+  }
+
+  public RequestMethod getMethod() {
+    return method;
+  }
+
+  public String getURL() {
+    return url;
+  }
+
+  public Map<String, String> getRequestHeaders() {
+    return requestHeaders;
+  }
+
+  /**
+   * @return the hash code of a request to the given url, as {@link HttpRequest#hashCode()}
+   */
+  private int hashOf(int urlHash) {
+    int result = method != null ? method.hashCode() : 0;
+    result = 31 * result + urlHash;
+    result = 31 * result + Arrays.hashCode(HttpRequest.NULL_PARAMETERS);
+    result = 31 * result + (requestHeaders != null ? requestHeaders.hashCode() : 0);
+    return result;
+  }
+
+  private static HttpParameter[] concat(HttpParameter[] first, HttpParameter[] second) {
+    if (second == null || second.length == 0) {
+      return first.clone();
+    }
+    HttpParameter[] all = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, all, first.length, second.length);
+    return all;
+  }
+
+  @Override
+  public String toString() {
+    return "HttpRequestTemplate{" + "requestMethod=" + method + ", url='" + url + '\''
+        + ", fixedParameters=" + Arrays.asList(fixedParameters) + ", requestHeaders="
+        + requestHeaders + '}';
+  }
+}
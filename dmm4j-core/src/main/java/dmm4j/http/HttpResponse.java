@@ -15,6 +15,9 @@
 package dmm4j.http;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -23,8 +26,10 @@ import dmm4j.conf.ConfigurationContext;
 import dmm4j.json.JSONArray;
 import dmm4j.json.JSONException;
 import dmm4j.json.JSONObject;
-import dmm4j.json.JSONTokener;
+import dmm4j.json.JSONReader;
+import dmm4j.json.UTF8JSONParser;
 import dmm4j.log.Logger;
+import dmm4j.util.BufferPool;
 
 /**
  * A data class representing HTTP Response
@@ -32,6 +37,11 @@ import dmm4j.log.Logger;
  */
 public abstract class HttpResponse {
   private static final Logger logger = Logger.getLogger(HttpResponseImpl.class);
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  /**
+   * largest Content-Length a body buffer is allocated for up front
+   */
+  private static final int MAX_PRESIZED_BODY = 16 * 1024 * 1024;
   protected final HttpClientConfiguration CONF;
 
   HttpResponse() {
@@ -44,6 +54,7 @@ public abstract class HttpResponse {
 
   protected int statusCode;
   protected String responseAsString = null;
+  protected byte[] responseAsBytes = null;
   protected InputStream is;
   private boolean streamConsumed = false;
 
@@ -73,7 +84,7 @@ public abstract class HttpResponse {
   }
 
   /**
-   * Returns the response body as string.<br>
+   * Returns the response body as string, decoded from UTF-8 in one go.<br>
    * Disconnects the internal HttpURLConnection silently.
    *
    * @return response body
@@ -81,42 +92,109 @@ public abstract class HttpResponse {
    */
   public String asString() throws DmmException {
     if (null == responseAsString) {
-      BufferedReader br = null;
-      InputStream stream = null;
+      byte[] bytes = asBytes();
+      if (null == bytes) {
+        return null;
+      }
+      this.responseAsString = new String(bytes, UTF_8);
+      logger.debug(responseAsString);
+    }
+    return responseAsString;
+  }
+
+  /**
+   * Returns the raw response body without making a String of it.<br>
+   * The array is shared by later calls and must not be modified. Disconnects the internal
+   * HttpURLConnection silently.
+   *
+   * @return response body, or null if there is none
+   * @throws DmmException when the body cannot be read
+   */
+  public byte[] asBytes() throws DmmException {
+    if (null == responseAsBytes) {
+      if (null != responseAsString) {
+        responseAsBytes = responseAsString.getBytes(UTF_8);
+      } else {
+        responseAsBytes = readBody();
+      }
+    }
+    return responseAsBytes;
+  }
+
+  /**
+   * @return read-only view of the raw response body, or null if there is none
+   * @throws DmmException when the body cannot be read
+   * @see #asBytes()
+   */
+  public ByteBuffer asByteBuffer() throws DmmException {
+    byte[] bytes = asBytes();
+    return bytes == null ? null : ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+
+  /**
+   * reads the stream in bulk into a buffer sized from Content-Length
+   */
+  private byte[] readBody() throws DmmException {
+    InputStream stream = null;
+    try {
+      stream = asStream();
+      if (null == stream) {
+        return null;
+      }
+      int length = contentLength();
+      // the body is kept, so a known length is read straight into its own array, and an unknown
+      // one through a pooled buffer copied out once at the end
+      byte[] pooled = length >= 0 ? null : BufferPool.takeBytes(BufferPool.MAX_SIZE);
+      byte[] buf = pooled != null ? pooled : new byte[Math.min(length, MAX_PRESIZED_BODY)];
       try {
-        stream = asStream();
-        if (null == stream) {
-          return null;
-        }
-        br = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
-        StringBuilder buf = new StringBuilder();
-        String line;
-        while ((line = br.readLine()) != null) {
-          buf.append(line).append("\n");
+        int count = 0;
+        for (;;) {
+          if (count == buf.length) {
+            // full, either exactly at the end or the body is longer than announced or compressed
+            int b = stream.read();
+            if (b == -1) {
+              break;
+            }
+            buf = Arrays.copyOf(buf, Math.max(8192, buf.length * 2));
+            buf[count++] = (byte) b;
+          }
+          int n = stream.read(buf, count, buf.length - count);
+          if (n == -1) {
+            break;
+          }
+          count += n;
         }
-        this.responseAsString = buf.toString();
-        logger.debug(responseAsString);
-        stream.close();
         streamConsumed = true;
-      } catch (IOException ioe) {
-        throw new DmmException(ioe.getMessage(), ioe);
+        return count == buf.length && buf != pooled ? buf : Arrays.copyOf(buf, count);
       } finally {
-        if (stream != null) {
-          try {
-            stream.close();
-          } catch (IOException ignore) {
-          }
-        }
-        if (br != null) {
-          try {
-            br.close();
-          } catch (IOException ignore) {
-          }
+        BufferPool.release(pooled);
+      }
+    } catch (IOException ioe) {
+      throw new DmmException(ioe.getMessage(), ioe);
+    } finally {
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (IOException ignore) {
         }
-        disconnectForcibly();
       }
+      disconnectForcibly();
+    }
+  }
+
+  /**
+   * @return Content-Length of the response, or -1 if absent or malformed
+   */
+  private int contentLength() {
+    String length = getResponseHeader("Content-Length");
+    if (length == null) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(length.trim());
+    } catch (NumberFormatException nfe) {
+      return -1;
     }
-    return responseAsString;
   }
 
   private JSONObject json = null;
@@ -130,18 +208,22 @@ public abstract class HttpResponse {
    */
   public JSONObject asJSONObject() throws DmmException {
     if (json == null) {
-      Reader reader = null;
+      InputStream stream = null;
       try {
         if (responseAsString == null) {
-          reader = asReader();
-          json = new JSONObject(new JSONTokener(reader));
+          stream = responseAsBytes != null ? new ByteArrayInputStream(responseAsBytes) : asStream();
+          json = new UTF8JSONParser(stream, CONF.isHttpCompactJSONEnabled(),
+              CONF.isHttpLazyJSONEnabled()).nextObject();
         } else {
           json = new JSONObject(responseAsString);
         }
-        if (CONF.isPrettyDebugEnabled()) {
-          logger.debug(json.toString(1));
-        } else {
-          logger.debug(responseAsString != null ? responseAsString : json.toString());
+        // printing the tree would also parse lazy values
+        if (logger.isDebugEnabled()) {
+          if (CONF.isPrettyDebugEnabled()) {
+            logger.debug(json.toString(1));
+          } else {
+            logger.debug(responseAsString != null ? responseAsString : json.toString());
+          }
         }
       } catch (JSONException jsone) {
         if (responseAsString == null) {
@@ -150,9 +232,9 @@ public abstract class HttpResponse {
           throw new DmmException(jsone.getMessage() + ":" + this.responseAsString, jsone);
         }
       } finally {
-        if (reader != null) {
+        if (stream != null) {
           try {
-            reader.close();
+            stream.close();
           } catch (IOException ignore) {
           }
         }
@@ -173,18 +255,22 @@ public abstract class HttpResponse {
    */
   public JSONArray asJSONArray() throws DmmException {
     if (jsonArray == null) {
-      Reader reader = null;
+      InputStream stream = null;
       try {
         if (responseAsString == null) {
-          reader = asReader();
-          jsonArray = new JSONArray(new JSONTokener(reader));
+          stream = responseAsBytes != null ? new ByteArrayInputStream(responseAsBytes) : asStream();
+          jsonArray = new UTF8JSONParser(stream, CONF.isHttpCompactJSONEnabled(),
+              CONF.isHttpLazyJSONEnabled()).nextArray();
         } else {
           jsonArray = new JSONArray(responseAsString);
         }
-        if (CONF.isPrettyDebugEnabled()) {
-          logger.debug(jsonArray.toString(1));
-        } else {
-          logger.debug(responseAsString != null ? responseAsString : jsonArray.toString());
+        // printing the tree would also parse lazy values
+        if (logger.isDebugEnabled()) {
+          if (CONF.isPrettyDebugEnabled()) {
+            logger.debug(jsonArray.toString(1));
+          } else {
+            logger.debug(responseAsString != null ? responseAsString : jsonArray.toString());
+          }
         }
       } catch (JSONException jsone) {
         if (logger.isDebugEnabled()) {
@@ -193,9 +279,9 @@ public abstract class HttpResponse {
           throw new DmmException(jsone.getMessage(), jsone);
         }
       } finally {
-        if (reader != null) {
+        if (stream != null) {
           try {
-            reader.close();
+            stream.close();
           } catch (IOException ignore) {
           }
         }
@@ -205,6 +291,30 @@ public abstract class HttpResponse {
     return jsonArray;
   }
 
+  /**
+   * Returns a pull parser reading the response body as it arrives.<br>
+   * This method cannot be called after consuming the stream. It is suggested to call disconnect()
+   * after closing the reader.
+   *
+   * @return reader over the response body
+   * @throws DmmException when the body is empty
+   * @see dmm4j.json.JSONReader
+   */
+  public JSONReader asJSONReader() throws DmmException {
+    if (responseAsString != null) {
+      return new JSONReader(responseAsString);
+    }
+    if (responseAsBytes != null) {
+      return new JSONReader(new ByteArrayInputStream(responseAsBytes));
+    }
+    InputStream stream = asStream();
+    if (stream == null) {
+      throw new DmmException("Response body is empty.");
+    }
+    streamConsumed = true;
+    return new JSONReader(stream);
+  }
+
   public Reader asReader() {
     try {
       return new BufferedReader(new InputStreamReader(is, "UTF-8"));
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import dmm4j.log.Logger;
+import dmm4j.util.BufferPool;
+
+/**
+ * Streams a multipart/form-data body straight from the parameters.<br>
+ * Part headers are encoded as UTF-8 up front, so the length of the body is known before sending
+ * unless a part is given as a stream. File contents are copied through a pooled buffer and never
+ * held on the heap as a whole.
+ *
+ * @author nikuyoshi
+ */
+final class MultipartEncoder {
+  private static final Logger logger = Logger.getLogger(MultipartEncoder.class);
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final byte[] CRLF = {'\r', '\n'};
+
+  private final String boundary;
+  private final HttpParameter[] params;
+  /**
+   * headers of each part, followed by the value for text parts
+   */
+  private final byte[][] parts;
+  private final byte[] tail;
+
+  MultipartEncoder(HttpParameter[] params) {
+    this(params, "----dmm4j-upload" + System.currentTimeMillis());
+  }
+
+  /**
+   * @param params parameters to be sent
+   * @param boundary boundary without the leading "--"
+   */
+  MultipartEncoder(HttpParameter[] params, String boundary) {
+    this.boundary = boundary;
+    this.params = params;
+    this.parts = new byte[params.length][];
+    for (int i = 0; i < params.length; i++) {
+      HttpParameter param = params[i];
+      StringBuilder head = new StringBuilder(128);
+      head.append("--").append(boundary).append("\r\n");
+      if (param.isFile()) {
+        head.append("Content-Disposition: form-data; name=\"").append(param.getName())
+            .append("\"; filename=\"").append(param.getFile().getName()).append("\"\r\n");
+        head.append("Content-Type: ").append(param.getContentType()).append("\r\n\r\n");
+      } else {
+        head.append("Content-Disposition: form-data; name=\"").append(param.getName())
+            .append("\"\r\n");
+        head.append("Content-Type: text/plain; charset=UTF-8\r\n\r\n");
+        head.append(param.getValue());
+      }
+      parts[i] = head.toString().getBytes(UTF_8);
+    }
+    this.tail = ("--" + boundary + "--\r\n\r\n").getBytes(UTF_8);
+  }
+
+  String getContentType() {
+    return "multipart/form-data; boundary=" + boundary;
+  }
+
+  /**
+   * @return length of the body, or -1 if a part is a stream or a missing file
+   */
+  long getContentLength() {
+    long length = tail.length;
+    for (int i = 0; i < params.length; i++) {
+      length += parts[i].length + CRLF.length;
+      if (params[i].isFile()) {
+        File file = params[i].getFile();
+        if (params[i].hasFileBody() || !file.isFile()) {
+          return -1;
+        }
+        length += file.length();
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Writes the body and flushes the destination.
+   *
+   * @param out destination
+   * @throws IOException when a file cannot be read or the body cannot be written
+   */
+  void writeTo(OutputStream out) throws IOException {
+    byte[] buf = null;
+    try {
+      for (int i = 0; i < params.length; i++) {
+        HttpParameter param = params[i];
+        out.write(parts[i]);
+        if (param.isFile()) {
+          logger.debug("Part: ", param.getFile().getName());
+          if (buf == null) {
+            buf = BufferPool.takeBytes(BufferPool.MAX_SIZE);
+          }
+          InputStream in =
+              param.hasFileBody() ? param.getFileBody() : new FileInputStream(param.getFile());
+          try {
+            int length;
+            while ((length = in.read(buf)) != -1) {
+              out.write(buf, 0, length);
+            }
+          } finally {
+            in.close();
+          }
+        } else {
+          logger.debug(param.getValue());
+        }
+        out.write(CRLF);
+      }
+      out.write(tail);
+      out.flush();
+    } finally {
+      BufferPool.release(buf);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A persistent socket owned by {@link ConnectionPool}.
+ *
+ * @author nikuyoshi
+ */
+final class PooledConnection {
+  private static final int BUFFER_SIZE = 8192;
+
+  private final String route;
+  private final Socket socket;
+  private final InputStream in;
+  private final OutputStream out;
+  private final int readTimeout;
+  private long lastUsed;
+  private long expiresAt = Long.MAX_VALUE;
+  private boolean reused = false;
+  /**
+   * set while a caller holds the connection, so that it is given back to the pool only once
+   */
+  private final AtomicBoolean leased = new AtomicBoolean();
+
+  PooledConnection(String route, Socket socket, int readTimeout) throws IOException {
+    this.route = route;
+    this.socket = socket;
+    this.readTimeout = readTimeout;
+    this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+    this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    this.lastUsed = System.currentTimeMillis();
+  }
+
+  String getRoute() {
+    return route;
+  }
+
+  InputStream getInputStream() {
+    return in;
+  }
+
+  OutputStream getOutputStream() {
+    return out;
+  }
+
+  long getLastUsed() {
+    return lastUsed;
+  }
+
+  boolean isReused() {
+    return reused;
+  }
+
+  void markLeased() {
+    leased.set(true);
+  }
+
+  /**
+   * @return true if the connection was leased and has not been given back yet
+   */
+  boolean markReturned() {
+    return leased.compareAndSet(true, false);
+  }
+
+  /**
+   * marks the connection idle
+   *
+   * @param keepAliveMillis how long the connection may stay idle, or -1 to use the pool default
+   */
+  void markIdle(long keepAliveMillis) {
+    lastUsed = System.currentTimeMillis();
+    expiresAt = keepAliveMillis < 0 ? Long.MAX_VALUE : lastUsed + keepAliveMillis;
+    reused = true;
+  }
+
+  boolean isExpired(long now, long idleTimeout) {
+    return now >= expiresAt || (idleTimeout > 0 && now - lastUsed >= idleTimeout);
+  }
+
+  /**
+   * Tests if the peer has closed the connection while it was idle in the pool.
+   *
+   * @return true if the connection cannot be used anymore
+   */
+  boolean isStale() {
+    if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+      return true;
+    }
+    try {
+      socket.setSoTimeout(1);
+      in.mark(1);
+      int b = in.read();
+      if (b == -1) {
+        return true;
+      }
+      // unsolicited data on an idle connection, the stream is out of sync
+      in.reset();
+      return true;
+    } catch (SocketTimeoutException expected) {
+      return false;
+    } catch (IOException ioe) {
+      return true;
+    } finally {
+      try {
+        socket.setSoTimeout(readTimeout > 0 ? readTimeout : 0);
+      } catch (IOException ignore) {
+      }
+    }
+  }
+
+  void close() {
+    try {
+      socket.close();
+    } catch (IOException ignore) {
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PooledConnection{" + "route='" + route + '\'' + ", socket=" + socket + ", lastUsed="
+        + lastUsed + ", reused=" + reused + '}';
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Map;
+
+import dmm4j.log.Logger;
+
+/**
+ * HttpClient implementation keeping persistent HTTP/1.1 connections per host.<br>
+ * Enable with -Ddmm4j.http.httpClient=dmm4j.http.PooledHttpClientImpl. Pool sizes and eviction
+ * are controlled by http.maxConnectionsPerRoute, http.maxTotalConnections,
+ * http.connectionIdleTimeout and http.connectionValidateAfterInactivity.
+ *
+ * @author nikuyoshi
+ */
+class PooledHttpClientImpl extends HttpClientImpl {
+  private static final Logger logger = Logger.getLogger(PooledHttpClientImpl.class);
+  private static final long serialVersionUID = 2394720376548170346L;
+
+  private final transient ConnectionPool pool;
+
+  public PooledHttpClientImpl(HttpClientConfiguration conf) {
+    super(conf);
+    this.pool = new ConnectionPool(conf);
+  }
+
+  @Override
+  HttpResponse send(HttpRequest req) throws IOException {
+    URL url = new URL(req.getURL());
+    String contentType = null;
+    byte[] body = null;
+    MultipartEncoder multipart = null;
+    long contentLength = -1;
+    if (req.getMethod() == RequestMethod.POST) {
+      if (HttpParameter.containsFile(req.getParameters())) {
+        multipart = new MultipartEncoder(req.getParameters());
+        contentType = multipart.getContentType();
+        contentLength = multipart.getContentLength();
+      } else {
+        contentType = "application/x-www-form-urlencoded";
+        String postParam = HttpParameter.encodeParameters(req.getParameters());
+        logger.debug("Post Params: ", postParam);
+        body = postParam.getBytes("UTF-8");
+        contentLength = body.length;
+      }
+    }
+    byte[] head = requestHead(req, url, contentType, contentLength);
+
+    PooledConnection con = pool.lease(url);
+    try {
+      return exchange(con, req, head, body, multipart);
+    } catch (IOException ioe) {
+      pool.discard(con);
+      if (!con.isReused() || !isIdempotent(req.getMethod())) {
+        // the server may have processed the request before the connection broke
+        throw ioe;
+      }
+      // the server may have closed the persistent connection in the meantime
+      logger.debug("Retrying with a fresh connection: ", ioe.getMessage());
+    }
+    con = pool.lease(url);
+    try {
+      return exchange(con, req, head, body, multipart);
+    } catch (IOException ioe) {
+      pool.discard(con);
+      throw ioe;
+    }
+  }
+
+  /**
+   * @return whether the request can be replayed without the server acting on it twice
+   */
+  private static boolean isIdempotent(RequestMethod method) {
+    return method == RequestMethod.GET || method == RequestMethod.HEAD;
+  }
+
+  private HttpResponse exchange(PooledConnection con, HttpRequest req, byte[] head, byte[] body,
+      MultipartEncoder multipart) throws IOException {
+    OutputStream out = con.getOutputStream();
+    out.write(head);
+    if (body != null) {
+      out.write(body);
+    } else if (multipart != null) {
+      if (multipart.getContentLength() >= 0) {
+        multipart.writeTo(out);
+      } else {
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+        multipart.writeTo(new BufferedOutputStream(chunked, 8192));
+        chunked.finish();
+      }
+    }
+    out.flush();
+    return new PooledHttpResponse(con, req.getMethod(), pool, CONF);
+  }
+
+  /**
+   * @param contentLength length of the body, or -1 to send a body of content type in chunks
+   */
+  private byte[] requestHead(HttpRequest req, URL url, String contentType, long contentLength)
+      throws IOException {
+    if (logger.isDebugEnabled()) {
+      logger.debug("Request: ");
+      logger.debug(req.getMethod().name() + " ", req.getURL());
+    }
+    boolean proxied = isProxyConfigured() && "http".equalsIgnoreCase(url.getProtocol());
+    StringBuilder head = new StringBuilder(256);
+    head.append(req.getMethod().name()).append(' ');
+    if (proxied) {
+      head.append(req.getURL());
+    } else {
+      head.append(url.getPath().length() == 0 ? "/" : url.getPath());
+      if (url.getQuery() != null) {
+        head.append('?').append(url.getQuery());
+      }
+    }
+    head.append(" HTTP/1.1\r\n");
+    head.append("Host: ").append(url.getHost());
+    if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+      head.append(':').append(url.getPort());
+    }
+    head.append("\r\n");
+    if (proxied) {
+      String authorization = ConnectionPool.proxyAuthorization(CONF);
+      if (authorization != null) {
+        head.append("Proxy-Authorization: ").append(authorization).append("\r\n");
+      }
+    }
+    Map<String, String> headers = req.getRequestHeaders();
+    if (headers != null) {
+      for (Map.Entry<String, String> header : headers.entrySet()) {
+        head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        logger.debug(header.getKey() + ": " + header.getValue());
+      }
+    }
+    if (contentType != null) {
+      head.append("Content-Type: ").append(contentType).append("\r\n");
+    }
+    if (contentLength >= 0) {
+      head.append("Content-Length: ").append(contentLength).append("\r\n");
+    } else if (contentType != null) {
+      head.append("Transfer-Encoding: chunked\r\n");
+    }
+    head.append("\r\n");
+    return head.toString().getBytes("ISO-8859-1");
+  }
+
+  /**
+   * closes idle pooled connections and stops the eviction task
+   */
+  @Override
+  public void shutdown() {
+    pool.shutdown();
+    super.shutdown();
+  }
+
+  /**
+   * writes each write as one chunk of the chunked transfer coding
+   */
+  private static final class ChunkedOutputStream extends FilterOutputStream {
+    ChunkedOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        // an empty chunk would end the body
+        return;
+      }
+      out.write((Integer.toHexString(len) + "\r\n").getBytes("ISO-8859-1"));
+      out.write(b, off, len);
+      out.write('\r');
+      out.write('\n');
+    }
+
+    /**
+     * writes the last chunk, leaving the connection open
+     */
+    void finish() throws IOException {
+      out.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+    }
+  }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dmm4j.util.BufferPool;
+
+/**
+ * HttpResponse read from a {@link PooledConnection}.<br>
+ * The connection goes back to the pool as soon as the body has been fully consumed, or is closed
+ * when the body is abandoned half way.
+ *
+ * @author nikuyoshi
+ */
+final class PooledHttpResponse extends HttpResponse {
+  /**
+   * bytes we are willing to skip to save a connection whose body has not been fully read
+   */
+  private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+  private final Map<String, List<String>> headerFields;
+  private final BodyInputStream body;
+
+  PooledHttpResponse(PooledConnection con, RequestMethod method, ConnectionPool pool,
+      HttpClientConfiguration conf) throws IOException {
+    super(conf);
+    InputStream in = con.getInputStream();
+    String statusLine = ConnectionPool.readLine(in);
+    if (statusLine == null) {
+      throw new IOException("Connection closed by peer before the status line was received");
+    }
+    String[] status = statusLine.split(" ", 3);
+    if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+      throw new IOException("Unexpected status line: " + statusLine);
+    }
+    try {
+      this.statusCode = Integer.parseInt(status[1]);
+    } catch (NumberFormatException nfe) {
+      throw new IOException("Unexpected status line: " + statusLine);
+    }
+    LinkedHashMap<String, List<String>> fields = new LinkedHashMap<String, List<String>>();
+    fields.put(null, Collections.singletonList(statusLine));
+    String line;
+    while ((line = ConnectionPool.readLine(in)) != null && line.length() != 0) {
+      int colon = line.indexOf(':');
+      if (colon <= 0) {
+        continue;
+      }
+      String name = line.substring(0, colon).trim();
+      String value = line.substring(colon + 1).trim();
+      List<String> values = get(fields, name);
+      if (values == null) {
+        values = new ArrayList<String>(1);
+        fields.put(name, values);
+      }
+      values.add(value);
+    }
+    this.headerFields = Collections.unmodifiableMap(fields);
+
+    boolean keepAlive = isKeepAlive(status[0]);
+    long keepAliveMillis = keepAliveMillis();
+    if (method == RequestMethod.HEAD || statusCode == 204 || statusCode == 304
+        || (100 <= statusCode && statusCode < 200)) {
+      body = new FixedLengthInputStream(con, pool, keepAlive, keepAliveMillis, 0);
+    } else if ("chunked".equalsIgnoreCase(getResponseHeader("Transfer-Encoding"))) {
+      body = new ChunkedInputStream(con, pool, keepAlive, keepAliveMillis);
+    } else if (getResponseHeader("Content-Length") != null) {
+      long length;
+      try {
+        length = Long.parseLong(getResponseHeader("Content-Length"));
+      } catch (NumberFormatException nfe) {
+        throw new IOException("Illegal Content-Length: " + getResponseHeader("Content-Length"));
+      }
+      body = new FixedLengthInputStream(con, pool, keepAlive, keepAliveMillis, length);
+    } else {
+      // the body is delimited by the end of the connection
+      body = new FixedLengthInputStream(con, pool, false, -1, Long.MAX_VALUE);
+    }
+    if ("gzip".equalsIgnoreCase(getResponseHeader("Content-Encoding")) && !body.isFinished()) {
+      is = new StreamingGZIPInputStream(body);
+    } else {
+      is = body;
+    }
+  }
+
+  private boolean isKeepAlive(String protocol) {
+    String connection = getResponseHeader("Connection");
+    if ("HTTP/1.0".equals(protocol)) {
+      return connection != null && connection.equalsIgnoreCase("keep-alive");
+    }
+    return connection == null || !connection.equalsIgnoreCase("close");
+  }
+
+  private long keepAliveMillis() {
+    String keepAlive = getResponseHeader("Keep-Alive");
+    if (keepAlive != null) {
+      for (String param : keepAlive.split(",")) {
+        String[] pair = param.trim().split("=");
+        if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("timeout")) {
+          try {
+            return Long.parseLong(pair[1].trim()) * 1000;
+          } catch (NumberFormatException ignore) {
+          }
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static List<String> get(Map<String, List<String>> fields, String name) {
+    for (Map.Entry<String, List<String>> entry : fields.entrySet()) {
+      if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(name)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String getResponseHeader(String name) {
+    List<String> values = get(headerFields, name);
+    return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaderFields() {
+    return headerFields;
+  }
+
+  @Override
+  public void disconnect() {
+    body.abort();
+  }
+
+  /**
+   * Frames the response body and hands the connection back once the body is exhausted.
+   */
+  abstract static class BodyInputStream extends InputStream {
+    private final PooledConnection con;
+    private final ConnectionPool pool;
+    private final boolean keepAlive;
+    private final long keepAliveMillis;
+    final InputStream in;
+    private boolean done = false;
+    private final byte[] single = new byte[1];
+
+    BodyInputStream(PooledConnection con, ConnectionPool pool, boolean keepAlive,
+        long keepAliveMillis) {
+      this.con = con;
+      this.pool = pool;
+      this.keepAlive = keepAlive;
+      this.keepAliveMillis = keepAliveMillis;
+      this.in = con.getInputStream();
+    }
+
+    abstract boolean isFinished();
+
+    /**
+     * called when the whole body has been read
+     */
+    final void finished() {
+      if (!done) {
+        done = true;
+        if (keepAlive) {
+          pool.release(con, keepAliveMillis);
+        } else {
+          pool.discard(con);
+        }
+      }
+    }
+
+    /**
+     * gives up the connection without reading the rest of the body
+     */
+    final void abort() {
+      if (!done) {
+        done = true;
+        pool.discard(con);
+      }
+    }
+
+    final boolean isDone() {
+      return done;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int n = read(single, 0, 1);
+      return n == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (done) {
+        return;
+      }
+      // try to save the connection by draining a small remainder
+      try {
+        byte[] skipBuffer = BufferPool.takeBytes(4096);
+        try {
+          long drained = 0;
+          int n;
+          while (!isDone() && drained < MAX_DRAIN_BYTES
+              && (n = read(skipBuffer, 0, skipBuffer.length)) != -1) {
+            drained += n;
+          }
+        } finally {
+          BufferPool.release(skipBuffer);
+        }
+      } catch (IOException ignore) {
+      } finally {
+        abort();
+      }
+    }
+  }
+
+  static final class FixedLengthInputStream extends BodyInputStream {
+    private long remaining;
+
+    FixedLengthInputStream(PooledConnection con, ConnectionPool pool, boolean keepAlive,
+        long keepAliveMillis, long length) {
+      super(con, pool, keepAlive, keepAliveMillis);
+      this.remaining = length;
+      if (length == 0) {
+        finished();
+      }
+    }
+
+    @Override
+    boolean isFinished() {
+      return remaining == 0;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining == 0 || isDone()) {
+        return -1;
+      }
+      int n;
+      try {
+        n = in.read(b, off, (int) Math.min(len, remaining));
+      } catch (IOException ioe) {
+        abort();
+        throw ioe;
+      }
+      if (n == -1) {
+        if (remaining != Long.MAX_VALUE) {
+          abort();
+          throw new IOException("Premature end of response body");
+        }
+        remaining = 0;
+        finished();
+        return -1;
+      }
+      if (remaining != Long.MAX_VALUE) {
+        remaining -= n;
+      }
+      if (remaining == 0) {
+        finished();
+      }
+      return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return isDone() ? 0 : (int) Math.min(in.available(), remaining);
+    }
+  }
+
+  static final class ChunkedInputStream extends BodyInputStream {
+    private long chunkRemaining = 0;
+    private boolean eof = false;
+
+    ChunkedInputStream(PooledConnection con, ConnectionPool pool, boolean keepAlive,
+        long keepAliveMillis) {
+      super(con, pool, keepAlive, keepAliveMillis);
+    }
+
+    @Override
+    boolean isFinished() {
+      return eof;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (eof || isDone()) {
+        return -1;
+      }
+      try {
+        if (chunkRemaining == 0) {
+          nextChunk();
+          if (eof) {
+            finished();
+            return -1;
+          }
+        }
+        int n = in.read(b, off, (int) Math.min(len, chunkRemaining));
+        if (n == -1) {
+          throw new IOException("Premature end of chunked response body");
+        }
+        chunkRemaining -= n;
+        if (chunkRemaining == 0) {
+          // CRLF terminating the chunk data
+          ConnectionPool.readLine(in);
+        }
+        return n;
+      } catch (IOException ioe) {
+        abort();
+        throw ioe;
+      }
+    }
+
+    private void nextChunk() throws IOException {
+      String line = ConnectionPool.readLine(in);
+      if (line == null) {
+        throw new IOException("Premature end of chunked response body");
+      }
+      int semicolon = line.indexOf(';');
+      if (semicolon != -1) {
+        line = line.substring(0, semicolon);
+      }
+      try {
+        chunkRemaining = Long.parseLong(line.trim(), 16);
+      } catch (NumberFormatException nfe) {
+        throw new IOException("Illegal chunk size: " + line);
+      }
+      if (chunkRemaining == 0) {
+        // skip trailers
+        String trailer;
+        while ((trailer = ConnectionPool.readLine(in)) != null && trailer.length() != 0) {
+        }
+        eof = true;
+      }
+    }
+
+    @Override
+    public int available() throws IOException {
+      return isDone() ? 0 : (int) Math.min(in.available(), chunkRemaining);
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket refilled at a fixed rate and holding up to burst tokens.<br>
+ * The bucket is kept as the time at which the next token becomes available (the theoretical
+ * arrival time), so acquiring a token is a single compare-and-set without locks.
+ *
+ * @author nikuyoshi
+ */
+public final class RateLimiter {
+  private final long intervalNanos;
+  /**
+   * how far the theoretical arrival time may run ahead of now while still conforming
+   */
+  private final long toleranceNanos;
+  private final AtomicLong arrivalTime;
+
+  private final AtomicLong acquiredCount = new AtomicLong();
+  private final AtomicLong throttledCount = new AtomicLong();
+  private final AtomicLong throttledNanos = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  /**
+   * @param permitsPerSecond sustained rate, must be positive
+   * @param burst number of permits which can be acquired back to back after an idle period
+   */
+  public RateLimiter(double permitsPerSecond, int burst) {
+    if (permitsPerSecond <= 0) {
+      throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+    }
+    this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+    this.toleranceNanos = intervalNanos * (Math.max(1, burst) - 1);
+    this.arrivalTime = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * Acquires a permit if one is available right now.
+   *
+   * @return true if the permit was acquired
+   */
+  public boolean tryAcquire() {
+    for (;;) {
+      long now = System.nanoTime();
+      long tat = arrivalTime.get();
+      long start = tat - now > 0 ? tat : now;
+      if (start - now > toleranceNanos) {
+        rejectedCount.incrementAndGet();
+        return false;
+      }
+      if (arrivalTime.compareAndSet(tat, start + intervalNanos)) {
+        acquiredCount.incrementAndGet();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Acquires a permit, blocking until it becomes available.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void acquire() throws InterruptedException {
+    long waitNanos = reserve();
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /**
+   * Reserves the next permit without waiting for it.
+   *
+   * @return nanoseconds the caller has to wait before using the permit, 0 if it can be used now
+   */
+  public long reserve() {
+    for (;;) {
+      long now = System.nanoTime();
+      long tat = arrivalTime.get();
+      long start = tat - now > 0 ? tat : now;
+      if (arrivalTime.compareAndSet(tat, start + intervalNanos)) {
+        acquiredCount.incrementAndGet();
+        long waitNanos = start - now - toleranceNanos;
+        if (waitNanos <= 0) {
+          return 0;
+        }
+        throttledCount.incrementAndGet();
+        throttledNanos.addAndGet(waitNanos);
+        return waitNanos;
+      }
+    }
+  }
+
+  /**
+   * @return number of permits handed out
+   */
+  public long getAcquiredCount() {
+    return acquiredCount.get();
+  }
+
+  /**
+   * @return number of permits which had to wait
+   */
+  public long getThrottledCount() {
+    return throttledCount.get();
+  }
+
+  /**
+   * @return total time callers waited for permits, in milliseconds
+   */
+  public long getThrottledMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get());
+  }
+
+  /**
+   * @return number of non-blocking attempts turned down
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  @Override
+  public String toString() {
+    double permitsPerSecond = TimeUnit.SECONDS.toNanos(1) / (double) intervalNanos;
+    return "RateLimiter{" + "permitsPerSecond=" + permitsPerSecond + ", acquiredCount="
+        + acquiredCount + ", throttledCount=" + throttledCount + ", throttledMillis="
+        + getThrottledMillis() + ", rejectedCount=" + rejectedCount + '}';
+  }
+}
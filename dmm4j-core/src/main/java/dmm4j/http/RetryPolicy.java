@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.http;
+
+import java.io.IOException;
+
+/**
+ * Decides whether and when a failed request is retried.<br>
+ * Implementations are chosen with the http.retryPolicy property and must provide a public
+ * constructor taking {@link HttpClientConfiguration}.
+ *
+ * @author nikuyoshi
+ */
+public interface RetryPolicy extends java.io.Serializable {
+
+  /**
+   * @param retriedCount number of retries already performed for this request
+   * @param elapsedMillis milliseconds elapsed since the first attempt started
+   * @param res the response with an error status code, or null if the attempt failed with ioe
+   * @param ioe the exception the attempt failed with, or null if res is available
+   * @return milliseconds to wait before the next attempt, or -1 to give up
+   */
+  long nextDelayMillis(int retriedCount, long elapsedMillis, HttpResponse res, IOException ioe);
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map keeping keys and values in two flat arrays, in insertion order.<br>
+ * Small maps are searched linearly, comparing references first as parsed keys are interned; once
+ * there are more than {@link #LINEAR_LIMIT} entries an open addressing table of array positions
+ * is added. Compared with HashMap this saves the table, one entry object per mapping and most of
+ * the unused capacity. Numbers can be kept unboxed in tagged slots as in {@link PrimitiveList}.
+ *
+ * @author nikuyoshi
+ */
+final class CompactMap extends AbstractMap<String, Object> {
+    private static final int LINEAR_LIMIT = 8;
+    private static final String[] EMPTY_KEYS = new String[0];
+    private static final Object[] EMPTY_VALUES = new Object[0];
+
+    private String[] keys;
+    private Object[] values;
+    /**
+     * tags and raw bits of unboxed numbers, allocated with the first one
+     */
+    private byte[] tags = null;
+    private long[] bits = null;
+    private int size = 0;
+    /**
+     * array position + 1 per slot, 0 for empty slots, or null while the map is small
+     */
+    private int[] index = null;
+    private int modCount = 0;
+
+    CompactMap() {
+        this(LINEAR_LIMIT);
+    }
+
+    /**
+     * @param capacity expected number of entries
+     */
+    CompactMap(int capacity) {
+        keys = capacity == 0 ? EMPTY_KEYS : new String[capacity];
+        values = capacity == 0 ? EMPTY_VALUES : new Object[capacity];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int i = indexOf(key);
+        return i >= 0 ? valueAt(i) : null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int i = slotFor(key);
+        Object old = valueAt(i);
+        values[i] = value;
+        if (tags != null) {
+            tags[i] = PrimitiveList.OBJECT;
+        }
+        return old;
+    }
+
+    /**
+     * maps key to an integral number without boxing it
+     */
+    void putLong(String key, long value) {
+        putBits(slotFor(key), value == (int) value ? PrimitiveList.INT : PrimitiveList.LONG, value);
+    }
+
+    void putDouble(String key, double value) {
+        putBits(slotFor(key), PrimitiveList.DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * maps key to a number given as a {@link PrimitiveList} tag and raw bits
+     */
+    void putNumber(String key, byte tag, long raw) {
+        putBits(slotFor(key), tag, raw);
+    }
+
+    /**
+     * @return the array position of key, or -1
+     */
+    int find(Object key) {
+        return indexOf(key);
+    }
+
+    /**
+     * @return whether the value at the array position is an unboxed number
+     */
+    boolean isNumber(int i) {
+        return tags != null && tags[i] != PrimitiveList.OBJECT;
+    }
+
+    long longAt(int i) {
+        return PrimitiveList.asLong(tags[i], bits[i]);
+    }
+
+    double doubleAt(int i) {
+        return PrimitiveList.asDouble(tags[i], bits[i]);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        Object old = valueAt(i);
+        removeAt(i);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            keys[i] = null;
+            values[i] = null;
+        }
+        size = 0;
+        index = null;
+        tags = null;
+        bits = null;
+        modCount++;
+    }
+
+    /**
+     * drops unused capacity once the map is fully built
+     */
+    void trimToSize() {
+        if (size < keys.length) {
+            String[] newKeys = size == 0 ? EMPTY_KEYS : new String[size];
+            Object[] newValues = size == 0 ? EMPTY_VALUES : new Object[size];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            keys = newKeys;
+            values = newValues;
+            if (tags != null) {
+                tags = Arrays.copyOf(tags, size);
+                bits = Arrays.copyOf(bits, size);
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Object valueAt(int i) {
+        if (i < 0) {
+            return null;
+        }
+        return isNumber(i) ? PrimitiveList.box(tags[i], bits[i]) : values[i];
+    }
+
+    private void putBits(int i, byte tag, long raw) {
+        if (tags == null) {
+            tags = new byte[keys.length];
+            bits = new long[keys.length];
+        }
+        values[i] = null;
+        tags[i] = tag;
+        bits[i] = raw;
+    }
+
+    /**
+     * @return the array position of key, appending it if absent
+     */
+    private int slotFor(String key) {
+        if (key == null) {
+            throw new NullPointerException("Null key.");
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            return i;
+        }
+        if (size == keys.length) {
+            int capacity = Math.max(4, size + (size >> 1));
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            if (tags != null) {
+                tags = Arrays.copyOf(tags, capacity);
+                bits = Arrays.copyOf(bits, capacity);
+            }
+        }
+        i = size;
+        keys[i] = key;
+        values[i] = null;
+        if (tags != null) {
+            tags[i] = PrimitiveList.OBJECT;
+        }
+        size++;
+        modCount++;
+        if (index != null && size * 2 <= index.length) {
+            insert(index, key, size);
+        } else if (size > LINEAR_LIMIT) {
+            rebuildIndex();
+        }
+        return i;
+    }
+
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        if (index == null) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int mask = index.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int i = index[slot] - 1;
+            if (i < 0) {
+                return -1;
+            }
+            if (keys[i] == key || keys[i].equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    private void removeAt(int i) {
+        int moved = size - i - 1;
+        System.arraycopy(keys, i + 1, keys, i, moved);
+        System.arraycopy(values, i + 1, values, i, moved);
+        if (tags != null) {
+            System.arraycopy(tags, i + 1, tags, i, moved);
+            System.arraycopy(bits, i + 1, bits, i, moved);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        modCount++;
+        if (size > LINEAR_LIMIT) {
+            rebuildIndex();
+        } else {
+            index = null;
+        }
+    }
+
+    private void rebuildIndex() {
+        int length = Integer.highestOneBit(size * 4 - 1);
+        int[] newIndex = new int[length];
+        for (int i = 0; i < size; i++) {
+            insert(newIndex, keys[i], i + 1);
+        }
+        index = newIndex;
+    }
+
+    private static void insert(int[] index, String key, int position) {
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = position;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int next = 0;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            final int i = last;
+            return new SimpleEntry<String, Object>(keys[i], valueAt(i)) {
+                private static final long serialVersionUID = 2911064217403497207L;
+
+                @Override
+                public Object setValue(Object value) {
+                    values[i] = value;
+                    if (tags != null) {
+                        tags[i] = PrimitiveList.OBJECT;
+                    }
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * JSONTokener scanning a char array window which is refilled in bulk.<br>
+ * Strings without escapes are cut out of the window in one go, integers are parsed in place, and
+ * line and column are only worked out when a syntax error is reported. It accepts the same input
+ * as {@link JSONTokener} and can be passed to {@link JSONObject#JSONObject(JSONTokener)} and
+ * {@link JSONArray#JSONArray(JSONTokener)}.
+ *
+ * @author nikuyoshi
+ */
+public class FastJSONTokener extends JSONTokener {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buf;
+    private int pos;
+    private int limit;
+    /**
+     * number of chars dropped from the head of the window so far
+     */
+    private long offset = 0;
+    /**
+     * line breaks and chars since the last one among the dropped chars
+     */
+    private int droppedLines = 0;
+    private int droppedColumn = 0;
+    private boolean eof = false;
+    /**
+     * 1 if the last char read can be stepped back over, 0 if the last read hit the end, -1 after
+     * a step back
+     */
+    private int lastStep = -1;
+
+    /**
+     * @param reader A reader.
+     */
+    public FastJSONTokener(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param reader     A reader.
+     * @param bufferSize size of the char window
+     */
+    public FastJSONTokener(Reader reader, int bufferSize) {
+        if (bufferSize < 16) {
+            throw new IllegalArgumentException("bufferSize too small: " + bufferSize);
+        }
+        this.reader = reader;
+        this.buf = new char[bufferSize];
+        this.pos = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * @param inputStream UTF-8 encoded source.
+     */
+    public FastJSONTokener(InputStream inputStream) {
+        this(new InputStreamReader(inputStream, UTF_8));
+    }
+
+    /**
+     * @param s A source string.
+     */
+    public FastJSONTokener(String s) {
+        this.reader = null;
+        this.buf = s.toCharArray();
+        this.pos = 0;
+        this.limit = buf.length;
+    }
+
+    @Override
+    public void back() throws JSONException {
+        if (lastStep == -1) {
+            throw new JSONException("Stepping back two steps is not supported");
+        }
+        if (lastStep == 1) {
+            pos--;
+        }
+        lastStep = -1;
+        eof = false;
+    }
+
+    @Override
+    public boolean end() {
+        return eof && lastStep != -1;
+    }
+
+    @Override
+    public char next() throws JSONException {
+        if (pos == limit && !fill()) {
+            eof = true;
+            lastStep = 0;
+            return 0;
+        }
+        lastStep = 1;
+        return buf[pos++];
+    }
+
+    @Override
+    public char nextClean() throws JSONException {
+        for (; ; ) {
+            while (pos < limit) {
+                char c = buf[pos++];
+                if (c > ' ') {
+                    lastStep = 1;
+                    return c;
+                }
+            }
+            if (!fill()) {
+                eof = true;
+                lastStep = 0;
+                return 0;
+            }
+        }
+    }
+
+    @Override
+    public String nextString(char quote) throws JSONException {
+        StringBuilder sb = null;
+        int start = pos;
+        for (; ; ) {
+            while (pos < limit) {
+                char c = buf[pos];
+                if (c == quote) {
+                    String string = sb == null ? new String(buf, start, pos - start)
+                            : sb.append(buf, start, pos - start).toString();
+                    pos++;
+                    lastStep = 1;
+                    return string;
+                }
+                if (c == '\\') {
+                    if (sb == null) {
+                        sb = new StringBuilder(pos - start + 16);
+                    }
+                    sb.append(buf, start, pos - start);
+                    pos++;
+                    sb.append(nextEscape());
+                    start = pos;
+                } else if (c == '\n' || c == '\r') {
+                    pos++;
+                    throw syntaxError("Unterminated string");
+                } else {
+                    pos++;
+                }
+            }
+            if (sb == null) {
+                sb = new StringBuilder(pos - start + 16);
+            }
+            sb.append(buf, start, pos - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            start = pos;
+        }
+    }
+
+    @Override
+    public Object nextValue() throws JSONException {
+        char c = nextClean();
+        switch (c) {
+            case '"':
+            case '\'':
+                return nextString(c);
+            case '{':
+                back();
+                return new JSONObject(this);
+            case '[':
+                back();
+                return new JSONArray(this);
+        }
+        // unquoted text, read up to the same formatting characters as JSONTokener
+        int start = pos - 1;
+        int i = pos;
+        if (!isDelimiter(c)) {
+            while (i < limit && !isDelimiter(buf[i])) {
+                i++;
+            }
+        } else {
+            i = start;
+        }
+        if (i < limit || reader == null) {
+            pos = i;
+            lastStep = -1;
+            return toValue(buf, start, i);
+        }
+        // the text runs past the window
+        StringBuilder sb = new StringBuilder().append(buf, start, i - start);
+        pos = i;
+        c = next();
+        while (c != 0 && !isDelimiter(c)) {
+            sb.append(c);
+            c = next();
+        }
+        back();
+        String string = sb.toString().trim();
+        if (string.equals("")) {
+            throw syntaxError("Missing value");
+        }
+        return JSONObject.stringToValue(string);
+    }
+
+    @Override
+    public String toString() {
+        int lines = droppedLines;
+        // 1 based, as in JSONTokener
+        int column = droppedColumn + 1;
+        for (int i = 0; i < pos; i++) {
+            if (buf[i] == '\n') {
+                lines++;
+                column = 0;
+            } else {
+                column++;
+            }
+        }
+        return " at " + (offset + pos) + " [character " + column + " line " + (lines + 1) + "]";
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c < ' ' || ",:]}/\\\"[{;=#".indexOf(c) >= 0;
+    }
+
+    /**
+     * Converts unquoted text the way {@link JSONObject#stringToValue(String)} does, without making
+     * a String for integers and literals.
+     */
+    private Object toValue(char[] chars, int start, int end) throws JSONException {
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        int length = end - start;
+        if (length == 0) {
+            throw syntaxError("Missing value");
+        }
+        char first = chars[start];
+        if (first == 't' && matches(chars, start, length, "true")) {
+            return Boolean.TRUE;
+        }
+        if (first == 'f' && matches(chars, start, length, "false")) {
+            return Boolean.FALSE;
+        }
+        if (first == 'n' && matches(chars, start, length, "null")) {
+            return JSONObject.NULL;
+        }
+        int i = start;
+        boolean negative = first == '-';
+        if (negative || first == '+') {
+            i++;
+        }
+        // up to 18 digits always fit in a long
+        if (i < end && end - i <= 18) {
+            long value = 0;
+            for (; i < end; i++) {
+                char c = chars[i];
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (i == end) {
+                if (negative) {
+                    value = -value;
+                }
+                if (value == (int) value) {
+                    return Integer.valueOf((int) value);
+                }
+                return Long.valueOf(value);
+            }
+        }
+        return JSONObject.stringToValue(new String(chars, start, length));
+    }
+
+    private static boolean matches(char[] chars, int start, int length, String literal) {
+        if (length != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private char nextEscape() throws JSONException {
+        char c = next();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Illegal escape.");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Illegal escape.");
+        }
+    }
+
+    /**
+     * Slides the window forward, keeping the last char read so that back() still works, and reads
+     * more chars.
+     *
+     * @return false at the end of the source
+     */
+    private boolean fill() throws JSONException {
+        if (reader == null) {
+            return false;
+        }
+        int drop = pos > 0 ? pos - 1 : 0;
+        if (drop > 0) {
+            for (int i = 0; i < drop; i++) {
+                if (buf[i] == '\n') {
+                    droppedLines++;
+                    droppedColumn = 0;
+                } else {
+                    droppedColumn++;
+                }
+            }
+            System.arraycopy(buf, drop, buf, 0, limit - drop);
+            offset += drop;
+            pos -= drop;
+            limit -= drop;
+        }
+        if (limit == buf.length) {
+            return false;
+        }
+        try {
+            int n;
+            while ((n = reader.read(buf, limit, buf.length - limit)) == 0) {
+                // try again
+            }
+            if (n == -1) {
+                return false;
+            }
+            limit += n;
+            return true;
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+    }
+}
@@ -24,11 +24,12 @@ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 SOFTWARE.
 */
 
-import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -85,7 +86,7 @@ public class JSONArray {
     /**
      * The arrayList where the JSONArray's properties are kept.
      */
-    private final ArrayList myArrayList;
+    private final List myArrayList;
 
 
     /**
@@ -95,6 +96,15 @@ public class JSONArray {
         this.myArrayList = new ArrayList();
     }
 
+    /**
+     * Construct a JSONArray kept in the given list, which is used as is.
+     *
+     * @param list An empty primitive list.
+     */
+    JSONArray(PrimitiveList list) {
+        this.myArrayList = list;
+    }
+
     /**
      * Construct a JSONArray from a JSONTokener.
      *
@@ -143,7 +153,7 @@ public class JSONArray {
      * @throws JSONException If there is a syntax error.
      */
     public JSONArray(String source) throws JSONException {
-        this(new JSONTokener(source));
+        this(new FastJSONTokener(source));
     }
 
 
@@ -230,6 +240,9 @@ public class JSONArray {
      *                       be converted to a number.
      */
     public double getDouble(int index) throws JSONException {
+        if (isNumber(index)) {
+            return ((PrimitiveList) this.myArrayList).doubleAt(index);
+        }
         Object object = get(index);
         try {
             return object instanceof Number ?
@@ -250,6 +263,9 @@ public class JSONArray {
      * @throws JSONException If the key is not found or if the value is not a number.
      */
     public int getInt(int index) throws JSONException {
+        if (isNumber(index)) {
+            return (int) ((PrimitiveList) this.myArrayList).longAt(index);
+        }
         Object object = get(index);
         try {
             return object instanceof Number ?
@@ -307,6 +323,9 @@ public class JSONArray {
      *                       be converted to a number.
      */
     public long getLong(int index) throws JSONException {
+        if (isNumber(index)) {
+            return ((PrimitiveList) this.myArrayList).longAt(index);
+        }
         Object object = get(index);
         try {
             return object instanceof Number ?
@@ -319,6 +338,18 @@ public class JSONArray {
     }
 
 
+    /**
+     * Determine if the value at an index is an unboxed number.
+     *
+     * @param index The index.
+     * @return true if the array is kept in a primitive list holding a number there.
+     */
+    private boolean isNumber(int index) {
+        return this.myArrayList instanceof PrimitiveList && index >= 0 && index < length()
+                && ((PrimitiveList) this.myArrayList).isNumber(index);
+    }
+
+
     /**
      * Get the string associated with an index.
      *
@@ -360,7 +391,7 @@ public class JSONArray {
             if (i > 0) {
                 sb.append(separator);
             }
-            sb.append(JSONObject.valueToString(this.myArrayList.get(i)));
+            sb.append(JSONObject.valueToString(opt(i)));
         }
         return sb.toString();
     }
@@ -384,8 +415,15 @@ public class JSONArray {
      * object at that index.
      */
     public Object opt(int index) {
-        return (index < 0 || index >= length()) ?
-                null : this.myArrayList.get(index);
+        if (index < 0 || index >= length()) {
+            return null;
+        }
+        Object object = this.myArrayList.get(index);
+        if (object instanceof LazyJSONValue) {
+            object = ((LazyJSONValue) object).materialize();
+            this.myArrayList.set(index, object);
+        }
+        return object;
     }
 
     /**
@@ -419,7 +457,11 @@ public class JSONArray {
      * @return this.
      */
     public JSONArray put(int value) {
-        put(new Integer(value));
+        if (this.myArrayList instanceof PrimitiveList) {
+            ((PrimitiveList) this.myArrayList).addLong(value);
+            return this;
+        }
+        put(Integer.valueOf(value));
         return this;
     }
 
@@ -431,7 +473,11 @@ public class JSONArray {
      * @return this.
      */
     public JSONArray put(long value) {
-        put(new Long(value));
+        if (this.myArrayList instanceof PrimitiveList) {
+            ((PrimitiveList) this.myArrayList).addLong(value);
+            return this;
+        }
+        put(Long.valueOf(value));
         return this;
     }
 
@@ -507,7 +553,7 @@ public class JSONArray {
      *                       not finite.
      */
     public JSONArray put(int index, double value) throws JSONException {
-        put(index, new Double(value));
+        put(index, Double.valueOf(value));
         return this;
     }
 
@@ -523,7 +569,7 @@ public class JSONArray {
      * @throws JSONException If the index is negative.
      */
     public JSONArray put(int index, int value) throws JSONException {
-        put(index, new Integer(value));
+        put(index, Integer.valueOf(value));
         return this;
     }
 
@@ -539,7 +585,7 @@ public class JSONArray {
      * @throws JSONException If the index is negative.
      */
     public JSONArray put(int index, long value) throws JSONException {
-        put(index, new Long(value));
+        put(index, Long.valueOf(value));
         return this;
     }
 
@@ -602,7 +648,9 @@ public class JSONArray {
      */
     public String toString() {
         try {
-            return '[' + join(",") + ']';
+            StringWriter writer = new StringWriter();
+            new JSONWriter(writer).value(this).finish();
+            return writer.toString();
         } catch (Exception e) {
             return null;
         }
@@ -645,7 +693,7 @@ public class JSONArray {
         int i;
         StringBuilder sb = new StringBuilder("[");
         if (len == 1) {
-            sb.append(JSONObject.valueToString(this.myArrayList.get(0),
+            sb.append(JSONObject.valueToString(opt(0),
                     indentFactor, indent));
         } else {
             int newindent = indent + indentFactor;
@@ -657,7 +705,7 @@ public class JSONArray {
                 for (int j = 0; j < newindent; j += 1) {
                     sb.append(' ');
                 }
-                sb.append(JSONObject.valueToString(this.myArrayList.get(i),
+                sb.append(JSONObject.valueToString(opt(i),
                         indentFactor, newindent));
             }
             sb.append('\n');
@@ -680,30 +728,7 @@ public class JSONArray {
      * @throws JSONException
      */
     public Writer write(Writer writer) throws JSONException {
-        try {
-            boolean b = false;
-            int len = length();
-
-            writer.write('[');
-
-            for (int i = 0; i < len; i += 1) {
-                if (b) {
-                    writer.write(',');
-                }
-                Object v = this.myArrayList.get(i);
-                if (v instanceof JSONObject) {
-                    ((JSONObject) v).write(writer);
-                } else if (v instanceof JSONArray) {
-                    ((JSONArray) v).write(writer);
-                } else {
-                    writer.write(JSONObject.valueToString(v));
-                }
-                b = true;
-            }
-            writer.write(']');
-            return writer;
-        } catch (IOException e) {
-            throw new JSONException(e);
-        }
+        new JSONWriter(writer).value(this).finish();
+        return writer;
     }
 }
\ No newline at end of file
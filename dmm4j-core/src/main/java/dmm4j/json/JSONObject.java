@@ -24,7 +24,7 @@ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 SOFTWARE.
 */
 
-import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -146,6 +146,16 @@ public class JSONObject {
     }
 
 
+    /**
+     * Construct a JSONObject kept in the given map, which is used as is.
+     *
+     * @param map An empty compact map.
+     */
+    JSONObject(CompactMap map) {
+        this.map = map;
+    }
+
+
     /**
      * Construct a JSONObject from a subset of another JSONObject.
      * An array of strings is used to identify the keys that should be copied.
@@ -303,7 +313,7 @@ public class JSONObject {
      *                       string or a duplicated key.
      */
     public JSONObject(String source) throws JSONException {
-        this(new JSONTokener(source));
+        this(new FastJSONTokener(source));
     }
 
 
@@ -425,6 +435,10 @@ public class JSONObject {
      *                       be converted to an integer.
      */
     public int getInt(String key) throws JSONException {
+        int i = numberAt(key);
+        if (i >= 0) {
+            return (int) ((CompactMap) this.map).longAt(i);
+        }
         Object object = get(key);
         try {
             return object instanceof Number ?
@@ -437,6 +451,49 @@ public class JSONObject {
     }
 
 
+    /**
+     * Get the double value associated with a key.
+     *
+     * @param key A key string.
+     * @return The numeric value.
+     * @throws JSONException if the key is not found or if the value is not
+     *                       a Number object and cannot be converted to a number.
+     */
+    public double getDouble(String key) throws JSONException {
+        int i = numberAt(key);
+        if (i >= 0) {
+            return ((CompactMap) this.map).doubleAt(i);
+        }
+        Object object = get(key);
+        try {
+            return object instanceof Number ?
+                    ((Number) object).doubleValue() :
+                    Double.parseDouble((String) object);
+        } catch (Exception e) {
+            throw new JSONException("JSONObject[" + quote(key) +
+                    "] is not a number.");
+        }
+    }
+
+
+    /**
+     * Get the position of an unboxed number in a compact map.
+     *
+     * @param key A key string.
+     * @return The array position, or -1 if the value is not kept unboxed.
+     */
+    private int numberAt(String key) {
+        if (this.map instanceof CompactMap) {
+            CompactMap compact = (CompactMap) this.map;
+            int i = compact.find(key);
+            if (i >= 0 && compact.isNumber(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
     /**
      * Get the JSONArray value associated with a key.
      *
@@ -482,6 +539,10 @@ public class JSONObject {
      *                       be converted to a long.
      */
     public long getLong(String key) throws JSONException {
+        int i = numberAt(key);
+        if (i >= 0) {
+            return ((CompactMap) this.map).longAt(i);
+        }
         Object object = get(key);
         try {
             return object instanceof Number ?
@@ -602,7 +663,15 @@ public class JSONObject {
      * @return An object which is the value, or null if there is no value.
      */
     public Object opt(String key) {
-        return key == null ? null : this.map.get(key);
+        if (key == null) {
+            return null;
+        }
+        Object object = this.map.get(key);
+        if (object instanceof LazyJSONValue) {
+            object = ((LazyJSONValue) object).materialize();
+            this.map.put(key, object);
+        }
+        return object;
     }
 
 
@@ -690,7 +759,14 @@ public class JSONObject {
      * @throws JSONException If the key is null or if the number is invalid.
      */
     public JSONObject put(String key, double value) throws JSONException {
-        put(key, new Double(value));
+        if (this.map instanceof CompactMap && key != null) {
+            if (Double.isInfinite(value) || Double.isNaN(value)) {
+                throw new JSONException("JSON does not allow non-finite numbers.");
+            }
+            ((CompactMap) this.map).putDouble(key, value);
+            return this;
+        }
+        put(key, Double.valueOf(value));
         return this;
     }
 
@@ -704,7 +780,11 @@ public class JSONObject {
      * @throws JSONException If the key is null.
      */
     public JSONObject put(String key, int value) throws JSONException {
-        put(key, new Integer(value));
+        if (this.map instanceof CompactMap && key != null) {
+            ((CompactMap) this.map).putLong(key, value);
+            return this;
+        }
+        put(key, Integer.valueOf(value));
         return this;
     }
 
@@ -718,7 +798,11 @@ public class JSONObject {
      * @throws JSONException If the key is null.
      */
     public JSONObject put(String key, long value) throws JSONException {
-        put(key, new Long(value));
+        if (this.map instanceof CompactMap && key != null) {
+            ((CompactMap) this.map).putLong(key, value);
+            return this;
+        }
+        put(key, Long.valueOf(value));
         return this;
     }
 
@@ -878,7 +962,9 @@ public class JSONObject {
      * or null if there was no value.
      */
     public Object remove(String key) {
-        return this.map.remove(key);
+        Object object = this.map.remove(key);
+        return object instanceof LazyJSONValue ?
+                ((LazyJSONValue) object).materialize() : object;
     }
 
     /**
@@ -935,7 +1021,7 @@ public class JSONObject {
                         string.indexOf('e') > -1 || string.indexOf('E') > -1) {
                     return Double.valueOf(string);
                 } else {
-                    Long myLong = new Long(string);
+                    Long myLong = Long.valueOf(string);
                     if (myLong == myLong.intValue()) {
                         return myLong.intValue();
                     } else {
@@ -985,20 +1071,9 @@ public class JSONObject {
      */
     public String toString() {
         try {
-            Iterator keys = keys();
-            StringBuilder sb = new StringBuilder("{");
-
-            while (keys.hasNext()) {
-                if (sb.length() > 1) {
-                    sb.append(',');
-                }
-                Object o = keys.next();
-                sb.append(quote(o.toString()));
-                sb.append(':');
-                sb.append(valueToString(this.map.get(o)));
-            }
-            sb.append('}');
-            return sb.toString();
+            StringWriter writer = new StringWriter();
+            new JSONWriter(writer).value(this).finish();
+            return writer.toString();
         } catch (Exception e) {
             return null;
         }
@@ -1051,7 +1126,7 @@ public class JSONObject {
             object = keys.next();
             sb.append(quote(object.toString()));
             sb.append(": ");
-            sb.append(valueToString(this.map.get(object), indentFactor,
+            sb.append(valueToString(opt(object.toString()), indentFactor,
                     indent));
         } else {
             while (keys.hasNext()) {
@@ -1066,7 +1141,7 @@ public class JSONObject {
                 }
                 sb.append(quote(object.toString()));
                 sb.append(": ");
-                sb.append(valueToString(this.map.get(object), indentFactor,
+                sb.append(valueToString(opt(object.toString()), indentFactor,
                         newindent));
             }
             if (sb.length() > 1) {
@@ -1232,32 +1307,7 @@ public class JSONObject {
      * @throws JSONException
      */
     public Writer write(Writer writer) throws JSONException {
-        try {
-            boolean commanate = false;
-            Iterator keys = keys();
-            writer.write('{');
-
-            while (keys.hasNext()) {
-                if (commanate) {
-                    writer.write(',');
-                }
-                Object key = keys.next();
-                writer.write(quote(key.toString()));
-                writer.write(':');
-                Object value = this.map.get(key);
-                if (value instanceof JSONObject) {
-                    ((JSONObject) value).write(writer);
-                } else if (value instanceof JSONArray) {
-                    ((JSONArray) value).write(writer);
-                } else {
-                    writer.write(valueToString(value));
-                }
-                commanate = true;
-            }
-            writer.write('}');
-            return writer;
-        } catch (IOException exception) {
-            throw new JSONException(exception);
-        }
+        new JSONWriter(writer).value(this).finish();
+        return writer;
     }
 }
\ No newline at end of file
@@ -0,0 +1,669 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+
+import dmm4j.util.BufferPool;
+
+/**
+ * Reads a JSON text as a stream of tokens.<br>
+ * Unlike {@link JSONTokener}, nothing is materialised unless asked for: callers walk the document
+ * with {@link #peek()}, {@link #beginObject()}, {@link #nextName()} and friends, and
+ * {@link #skipValue()} steps over whole subtrees without building strings or objects. Input is
+ * read in bulk into a char buffer which can be reused across readers.
+ * <pre>
+ * JSONReader reader = response.asJSONReader();
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     if (reader.nextName().equals("result")) {
+ *         ...
+ *     } else {
+ *         reader.skipValue();
+ *     }
+ * }
+ * reader.endObject();
+ * </pre>
+ *
+ * @author nikuyoshi
+ */
+public final class JSONReader implements Closeable {
+
+    /**
+     * Kinds of tokens returned by {@link JSONReader#peek()}.
+     */
+    public enum Token {
+        BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL,
+        END_DOCUMENT
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    // scopes kept on the stack
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final Reader in;
+    private char[] buf;
+    /**
+     * whether the buffer came from the BufferPool and goes back to it on close
+     */
+    private final boolean pooled;
+    private int pos = 0;
+    private int limit = 0;
+    /**
+     * number of chars discarded from the buffer so far, for error messages
+     */
+    private long consumed = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+    private Token peeked = null;
+    private final StringBuilder scratch = new StringBuilder();
+
+    /**
+     * @param in source of the JSON text
+     */
+    public JSONReader(Reader in) {
+        this(in, BufferPool.takeChars(DEFAULT_BUFFER_SIZE), true);
+    }
+
+    /**
+     * @param in     source of the JSON text
+     * @param buffer buffer to read into, may be reused once this reader is done
+     */
+    public JSONReader(Reader in, char[] buffer) {
+        this(in, buffer, false);
+    }
+
+    private JSONReader(Reader in, char[] buffer, boolean pooled) {
+        if (buffer.length < 16) {
+            throw new IllegalArgumentException("buffer too small: " + buffer.length);
+        }
+        this.in = in;
+        this.buf = buffer;
+        this.pooled = pooled;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @param in UTF-8 encoded JSON text
+     */
+    public JSONReader(InputStream in) {
+        this(new InputStreamReader(in, UTF_8));
+    }
+
+    /**
+     * @param source JSON text
+     */
+    public JSONReader(String source) {
+        this(new StringReader(source), BufferPool.takeChars(Math.min(source.length(),
+                DEFAULT_BUFFER_SIZE)), true);
+    }
+
+    /**
+     * Returns the kind of the next token without consuming it.
+     *
+     * @return the next token
+     * @throws JSONException on malformed input or I/O failure
+     */
+    public Token peek() throws JSONException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = stack[stackSize - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                if (nextNonWhitespace() == ']') {
+                    pos++;
+                    return peeked = Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                pos++;
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                } else if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                pos++;
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                    pos++;
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                stack[stackSize - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':' after a name");
+                }
+                pos++;
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            default:
+                // NONEMPTY_DOCUMENT
+                if (!skipWhitespace()) {
+                    return peeked = Token.END_DOCUMENT;
+                }
+                throw syntaxError("Unexpected data after the end of the document");
+        }
+        c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                pos++;
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                pos++;
+                return peeked = Token.BEGIN_ARRAY;
+            case '"':
+                pos++;
+                return peeked = Token.STRING;
+            case 't':
+            case 'f':
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                return peeked = Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return peeked = Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public void beginObject() throws JSONException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws JSONException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    public void beginArray() throws JSONException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws JSONException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    /**
+     * @return true if the current object or array has more elements
+     * @throws JSONException on malformed input or I/O failure
+     */
+    public boolean hasNext() throws JSONException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY
+                && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws JSONException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * Returns a string value. Numbers are returned in their literal form.
+     *
+     * @return the string
+     * @throws JSONException if the next token is neither a string nor a number
+     */
+    public String nextString() throws JSONException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            return readString();
+        }
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return readLiteral();
+        }
+        throw syntaxError("Expected a string but was " + token);
+    }
+
+    public boolean nextBoolean() throws JSONException {
+        expect(Token.BOOLEAN);
+        String literal = readLiteral();
+        if (literal.equals("true")) {
+            return true;
+        }
+        if (literal.equals("false")) {
+            return false;
+        }
+        throw syntaxError("Expected a boolean but was " + literal);
+    }
+
+    public void nextNull() throws JSONException {
+        expect(Token.NULL);
+        String literal = readLiteral();
+        if (!literal.equals("null")) {
+            throw syntaxError("Expected null but was " + literal);
+        }
+    }
+
+    /**
+     * Returns a number value. Strings holding a number are accepted as well, as the DMM API
+     * quotes some numeric fields.
+     *
+     * @return the number
+     * @throws JSONException if the value is not a number
+     */
+    public double nextDouble() throws JSONException {
+        String number = nextNumber();
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException nfe) {
+            throw syntaxError("Expected a number but was " + number);
+        }
+    }
+
+    public long nextLong() throws JSONException {
+        String number = nextNumber();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException nfe) {
+            double d = nextDoubleOf(number);
+            if (d != (long) d) {
+                throw syntaxError("Expected a long but was " + number);
+            }
+            return (long) d;
+        }
+    }
+
+    public int nextInt() throws JSONException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw syntaxError("Expected an int but was " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads the next value into the same representation {@link JSONTokener#nextValue()} uses:
+     * JSONObject, JSONArray, String, Integer, Long, Double, Boolean or {@link JSONObject#NULL}.
+     *
+     * @return the value
+     * @throws JSONException on malformed input or I/O failure
+     */
+    public Object nextValue() throws JSONException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                beginObject();
+                while (hasNext()) {
+                    String name = nextName();
+                    object.put(name, nextValue());
+                }
+                endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                beginArray();
+                while (hasNext()) {
+                    array.put(nextValue());
+                }
+                endArray();
+                return array;
+            case STRING:
+                return nextString();
+            case NUMBER:
+                peeked = null;
+                return JSONObject.stringToValue(readLiteral());
+            case BOOLEAN:
+                return nextBoolean();
+            case NULL:
+                nextNull();
+                return JSONObject.NULL;
+            default:
+                throw syntaxError("Expected a value but was " + peek());
+        }
+    }
+
+    /**
+     * Skips the next value, including nested objects and arrays, without materialising it.
+     *
+     * @throws JSONException on malformed input or I/O failure
+     */
+    public void skipValue() throws JSONException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                case STRING:
+                    peeked = null;
+                    skipString();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of the document");
+                default:
+                    peeked = null;
+                    skipLiteral();
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        stack[0] = NONEMPTY_DOCUMENT;
+        stackSize = 1;
+        if (pooled && buf != null) {
+            BufferPool.release(buf);
+        }
+        buf = null;
+        in.close();
+    }
+
+    /**
+     * Makes a JSONException to signal a syntax error.
+     *
+     * @param message the error message
+     * @return a JSONException including the position in the source
+     */
+    public JSONException syntaxError(String message) {
+        return new JSONException(message + toString());
+    }
+
+    @Override
+    public String toString() {
+        return " at " + (consumed + pos) + " [path " + path() + "]";
+    }
+
+    private String path() {
+        StringBuilder path = new StringBuilder("$");
+        for (int i = 1; i < stackSize; i++) {
+            path.append(stack[i] == EMPTY_ARRAY || stack[i] == NONEMPTY_ARRAY ? "[]" : ".");
+        }
+        return path.toString();
+    }
+
+    private void expect(Token expected) throws JSONException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private String nextNumber() throws JSONException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return readLiteral();
+        }
+        if (token == Token.STRING) {
+            peeked = null;
+            return readString().trim();
+        }
+        throw syntaxError("Expected a number but was " + token);
+    }
+
+    private double nextDoubleOf(String number) throws JSONException {
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException nfe) {
+            throw syntaxError("Expected a number but was " + number);
+        }
+    }
+
+    /**
+     * Makes at least one more char available, compacting the buffer.
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws JSONException {
+        if (pos > 0) {
+            consumed += pos;
+            limit -= pos;
+            System.arraycopy(buf, pos, buf, 0, limit);
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            return true;
+        }
+        try {
+            int n;
+            while ((n = in.read(buf, limit, buf.length - limit)) == 0) {
+                // try again
+            }
+            if (n == -1) {
+                return false;
+            }
+            limit += n;
+            return true;
+        } catch (IOException ioe) {
+            throw new JSONException(ioe);
+        }
+    }
+
+    /**
+     * @return false at the end of the input
+     */
+    private boolean skipWhitespace() throws JSONException {
+        for (; ; ) {
+            while (pos < limit) {
+                char c = buf[pos];
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                    return true;
+                }
+                pos++;
+            }
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the next non-whitespace char, which is left unconsumed
+     */
+    private int nextNonWhitespace() throws JSONException {
+        if (!skipWhitespace()) {
+            throw syntaxError("Unexpected end of the document");
+        }
+        return buf[pos];
+    }
+
+    /**
+     * reads the rest of a string whose opening quote has been consumed
+     */
+    private String readString() throws JSONException {
+        int start = pos;
+        // fast path: the whole string is in the buffer and has no escapes
+        for (int i = pos; i < limit; i++) {
+            char c = buf[i];
+            if (c == '"') {
+                pos = i + 1;
+                return new String(buf, start, i - start);
+            }
+            if (c == '\\') {
+                break;
+            }
+        }
+        scratch.setLength(0);
+        for (; ; ) {
+            while (pos < limit) {
+                char c = buf[pos++];
+                if (c == '"') {
+                    return scratch.toString();
+                }
+                if (c == '\\') {
+                    scratch.append(readEscape());
+                } else {
+                    scratch.append(c);
+                }
+            }
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private void skipString() throws JSONException {
+        for (; ; ) {
+            while (pos < limit) {
+                char c = buf[pos++];
+                if (c == '"') {
+                    return;
+                }
+                if (c == '\\') {
+                    readEscape();
+                }
+            }
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws JSONException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+        char c = buf[pos++];
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                while (limit - pos < 4) {
+                    if (!fill()) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(buf[pos++], 16);
+                    if (digit == -1) {
+                        throw syntaxError("Illegal escape.");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Illegal escape.");
+        }
+    }
+
+    /**
+     * @return length of the unquoted literal starting at pos, which is made contiguous in the
+     *         buffer
+     */
+    private int literalLength() throws JSONException {
+        int i = 0;
+        for (; ; ) {
+            while (pos + i < limit) {
+                char c = buf[pos + i];
+                if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n'
+                        || c == '\r' || c == '\t') {
+                    return i;
+                }
+                i++;
+            }
+            if (i == buf.length) {
+                throw syntaxError("Literal too long");
+            }
+            if (!fill()) {
+                return i;
+            }
+        }
+    }
+
+    private String readLiteral() throws JSONException {
+        int length = literalLength();
+        if (length == 0) {
+            throw syntaxError("Missing value");
+        }
+        String literal = new String(buf, pos, length);
+        pos += length;
+        return literal;
+    }
+
+    private void skipLiteral() throws JSONException {
+        pos += literalLength();
+    }
+}
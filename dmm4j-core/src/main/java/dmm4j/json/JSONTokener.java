@@ -2,6 +2,8 @@ package dmm4j.json;
 
 import java.io.*;
 
+import dmm4j.util.BufferPool;
+
 /*
 Copyright (c) 2002 JSON.org
 
@@ -62,6 +64,20 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Construct a JSONTokener for a subclass which reads the source itself.
+     */
+    protected JSONTokener() {
+        this.reader = null;
+        this.eof = false;
+        this.usePrevious = false;
+        this.previous = 0;
+        this.index = 0;
+        this.character = 1;
+        this.line = 1;
+    }
+
+
     /**
      * Construct a JSONTokener from an InputStream.
      */
@@ -229,7 +245,7 @@ public class JSONTokener {
      */
     public String nextString(char quote) throws JSONException {
         char c;
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = BufferPool.takeBuilder();
         for (; ; ) {
             c = next();
             switch (c) {
@@ -270,7 +286,9 @@ public class JSONTokener {
                     break;
                 default:
                     if (c == quote) {
-                        return sb.toString();
+                        String string = sb.toString();
+                        BufferPool.release(sb);
+                        return string;
                     }
                     sb.append(c);
             }
@@ -309,7 +327,7 @@ public class JSONTokener {
          * formatting character.
          */
 
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = BufferPool.takeBuilder();
         while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
             sb.append(c);
             c = next();
@@ -317,6 +335,7 @@ public class JSONTokener {
         back();
 
         string = sb.toString().trim();
+        BufferPool.release(sb);
         if (string.equals("")) {
             throw syntaxError("Missing value");
         }
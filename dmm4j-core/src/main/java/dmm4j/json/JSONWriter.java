@@ -0,0 +1,569 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import dmm4j.util.BufferPool;
+
+/**
+ * Writes JSON text to a Writer or, encoded as UTF-8, to an OutputStream.<br>
+ * Output goes through a char buffer which can be reused across writers, strings are copied in
+ * runs between the characters which need escaping, and integers are formatted in place, so no
+ * intermediate strings or wrapper objects are made. The text is the same as
+ * {@link JSONObject#toString()} produces.
+ * <pre>
+ * JSONWriter writer = new JSONWriter(out);
+ * writer.beginObject().name("content_id").value(id).name("item").value(item).endObject();
+ * writer.flush();
+ * </pre>
+ *
+ * @author nikuyoshi
+ */
+public final class JSONWriter implements Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // scopes kept on the stack
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final Writer writer;
+    private final OutputStream out;
+    private char[] buf;
+    /**
+     * whether the buffers came from the BufferPool and go back to it when done
+     */
+    private final boolean pooled;
+    private int count = 0;
+    private byte[] bytes = null;
+    /**
+     * high surrogate left over from the previous flush to the OutputStream, or 0
+     */
+    private char pendingSurrogate = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+
+    /**
+     * @param writer destination of the JSON text
+     */
+    public JSONWriter(Writer writer) {
+        this(writer, null, BufferPool.takeChars(DEFAULT_BUFFER_SIZE), true);
+    }
+
+    /**
+     * @param writer destination of the JSON text
+     * @param buffer buffer to write through, may be reused once this writer is flushed
+     */
+    public JSONWriter(Writer writer, char[] buffer) {
+        this(writer, null, buffer, false);
+    }
+
+    /**
+     * @param out destination of the UTF-8 encoded JSON text
+     */
+    public JSONWriter(OutputStream out) {
+        this(null, out, BufferPool.takeChars(DEFAULT_BUFFER_SIZE), true);
+    }
+
+    private JSONWriter(Writer writer, OutputStream out, char[] buffer, boolean pooled) {
+        if (buffer.length < 32) {
+            throw new IllegalArgumentException("buffer too small: " + buffer.length);
+        }
+        this.writer = writer;
+        this.out = out;
+        this.buf = buffer;
+        this.pooled = pooled;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    public JSONWriter beginObject() throws JSONException {
+        beforeValue();
+        push(EMPTY_OBJECT);
+        write('{');
+        return this;
+    }
+
+    public JSONWriter endObject() throws JSONException {
+        int scope = stack[stackSize - 1];
+        if (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT) {
+            throw new JSONException("Misplaced endObject.");
+        }
+        stackSize--;
+        write('}');
+        return this;
+    }
+
+    public JSONWriter beginArray() throws JSONException {
+        beforeValue();
+        push(EMPTY_ARRAY);
+        write('[');
+        return this;
+    }
+
+    public JSONWriter endArray() throws JSONException {
+        int scope = stack[stackSize - 1];
+        if (scope != EMPTY_ARRAY && scope != NONEMPTY_ARRAY) {
+            throw new JSONException("Misplaced endArray.");
+        }
+        stackSize--;
+        write(']');
+        return this;
+    }
+
+    /**
+     * @param name name of the next member of the current object
+     * @return this
+     * @throws JSONException if not inside an object or on I/O failure
+     */
+    public JSONWriter name(String name) throws JSONException {
+        if (name == null) {
+            throw new JSONException("Null key.");
+        }
+        int scope = stack[stackSize - 1];
+        if (scope == NONEMPTY_OBJECT) {
+            write(',');
+        } else if (scope != EMPTY_OBJECT) {
+            throw new JSONException("Misplaced name.");
+        }
+        stack[stackSize - 1] = DANGLING_NAME;
+        writeString(name);
+        write(':');
+        return this;
+    }
+
+    public JSONWriter value(String value) throws JSONException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JSONWriter value(long value) throws JSONException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JSONWriter value(double value) throws JSONException {
+        beforeValue();
+        writeDouble(value);
+        return this;
+    }
+
+    public JSONWriter value(boolean value) throws JSONException {
+        beforeValue();
+        write(value ? "true" : "false");
+        return this;
+    }
+
+    public JSONWriter nullValue() throws JSONException {
+        beforeValue();
+        write("null");
+        return this;
+    }
+
+    /**
+     * Writes any value {@link JSONObject#valueToString(Object)} accepts, walking JSONObjects,
+     * JSONArrays, Maps, Collections and arrays without making intermediate strings.
+     *
+     * @param value the value
+     * @return this
+     * @throws JSONException if the value contains a non-finite number or on I/O failure
+     */
+    public JSONWriter value(Object value) throws JSONException {
+        if (value == null || value.equals(null)) {
+            return nullValue();
+        }
+        if (value instanceof String) {
+            return value((String) value);
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        }
+        if (value instanceof Number) {
+            beforeValue();
+            write(JSONObject.numberToString((Number) value));
+            return this;
+        }
+        if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        }
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            beginObject();
+            Iterator<?> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next().toString();
+                name(key);
+                value(object.opt(key));
+            }
+            return endObject();
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            beginArray();
+            for (int i = 0, length = array.length(); i < length; i++) {
+                value(array.opt(i));
+            }
+            return endArray();
+        }
+        if (value instanceof Map) {
+            // as new JSONObject(map) would, dropping null values
+            beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (entry.getValue() != null) {
+                    name(String.valueOf(entry.getKey()));
+                    wrappedValue(entry.getValue());
+                }
+            }
+            return endObject();
+        }
+        if (value instanceof Collection) {
+            beginArray();
+            for (Object element : (Collection) value) {
+                wrappedValue(element);
+            }
+            return endArray();
+        }
+        if (value.getClass().isArray()) {
+            beginArray();
+            for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                wrappedValue(Array.get(value, i));
+            }
+            return endArray();
+        }
+        return value(value.toString());
+    }
+
+    /**
+     * writes an element of a Map, Collection or array the way {@link JSONObject#wrap(Object)}
+     * converts it
+     */
+    private void wrappedValue(Object value) throws JSONException {
+        if (value instanceof Map || value instanceof Collection
+                || (value != null && value.getClass().isArray())) {
+            value(value);
+        } else {
+            value(JSONObject.wrap(value));
+        }
+    }
+
+    /**
+     * Writes the buffered text to the destination and flushes it.
+     *
+     * @throws JSONException on I/O failure
+     */
+    public void flush() throws JSONException {
+        drain();
+        try {
+            if (writer != null) {
+                writer.flush();
+            } else {
+                out.flush();
+            }
+        } catch (IOException ioe) {
+            throw new JSONException(ioe);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } catch (JSONException jsone) {
+            throw new IOException(jsone.getMessage(), jsone);
+        } finally {
+            releaseBuffers();
+            if (writer != null) {
+                writer.close();
+            } else {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * writes the buffered text without flushing or closing the destination, and gives the
+     * buffers back
+     */
+    void finish() throws JSONException {
+        try {
+            drain();
+        } finally {
+            releaseBuffers();
+        }
+    }
+
+    private void releaseBuffers() {
+        if (pooled) {
+            BufferPool.release(buf);
+            BufferPool.release(bytes);
+        }
+        buf = null;
+        bytes = null;
+    }
+
+    private void beforeValue() throws JSONException {
+        switch (stack[stackSize - 1]) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                write(',');
+                break;
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                throw new JSONException("JSON text must have only one top-level value.");
+            default:
+                throw new JSONException("Value written without a name.");
+        }
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private void write(char c) throws JSONException {
+        if (count == buf.length) {
+            drain();
+        }
+        buf[count++] = c;
+    }
+
+    private void write(String s) throws JSONException {
+        int length = s.length();
+        for (int start = 0; start < length; ) {
+            if (count == buf.length) {
+                drain();
+            }
+            int n = Math.min(length - start, buf.length - count);
+            s.getChars(start, start + n, buf, count);
+            count += n;
+            start += n;
+        }
+    }
+
+    /**
+     * writes a quoted string, escaping as {@link JSONObject#quote(String)} does
+     */
+    private void writeString(String s) throws JSONException {
+        write('"');
+        int length = s.length();
+        int run = 0;
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= ' ' && c != '"' && c != '\\' && (c != '/' || previous != '<')
+                    && (c < '\u0080' || c >= '\u00a0') && (c < '\u2000' || c >= '\u2100')) {
+                previous = c;
+                continue;
+            }
+            previous = c;
+            if (run < i) {
+                write(s, run, i);
+            }
+            run = i + 1;
+            if (buf.length - count < 6) {
+                drain();
+            }
+            buf[count++] = '\\';
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    buf[count++] = c;
+                    break;
+                case '\b':
+                    buf[count++] = 'b';
+                    break;
+                case '\t':
+                    buf[count++] = 't';
+                    break;
+                case '\n':
+                    buf[count++] = 'n';
+                    break;
+                case '\f':
+                    buf[count++] = 'f';
+                    break;
+                case '\r':
+                    buf[count++] = 'r';
+                    break;
+                default:
+                    buf[count++] = 'u';
+                    buf[count++] = HEX[(c >> 12) & 0xf];
+                    buf[count++] = HEX[(c >> 8) & 0xf];
+                    buf[count++] = HEX[(c >> 4) & 0xf];
+                    buf[count++] = HEX[c & 0xf];
+            }
+        }
+        if (run < length) {
+            write(s, run, length);
+        }
+        write('"');
+    }
+
+    /**
+     * copies chars [start, end) of s
+     */
+    private void write(String s, int start, int end) throws JSONException {
+        while (start < end) {
+            if (count == buf.length) {
+                drain();
+            }
+            int n = Math.min(end - start, buf.length - count);
+            s.getChars(start, start + n, buf, count);
+            count += n;
+            start += n;
+        }
+    }
+
+    private void writeLong(long value) throws JSONException {
+        if (value == Long.MIN_VALUE) {
+            write("-9223372036854775808");
+            return;
+        }
+        if (buf.length - count < 20) {
+            drain();
+        }
+        if (value < 0) {
+            buf[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = count + digits - 1; i >= count; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
+
+    private void writeDouble(double value) throws JSONException {
+        if (Double.isInfinite(value) || Double.isNaN(value)) {
+            throw new JSONException("JSON does not allow non-finite numbers.");
+        }
+        if (value == (long) value && Math.abs(value) < 1e7) {
+            // Double.toString prints these as "n.0", which numberToString shortens to "n"
+            if (value == 0 && 1 / value < 0) {
+                write("-0");
+            } else {
+                writeLong((long) value);
+            }
+            return;
+        }
+        write(JSONObject.numberToString(value));
+    }
+
+    /**
+     * writes the buffer to the destination
+     */
+    private void drain() throws JSONException {
+        try {
+            if (writer != null) {
+                writer.write(buf, 0, count);
+            } else {
+                encode();
+            }
+        } catch (IOException ioe) {
+            throw new JSONException(ioe);
+        }
+        count = 0;
+    }
+
+    private void encode() throws IOException {
+        if (bytes == null) {
+            bytes = pooled ? BufferPool.takeBytes(buf.length * 3 + 4) : new byte[buf.length * 3 + 4];
+        }
+        int n = 0;
+        int i = 0;
+        char c;
+        if (pendingSurrogate != 0 && count > 0) {
+            n = encodeCodePoint(pendingSurrogate, buf[0], n);
+            i = Character.isLowSurrogate(buf[0]) ? 1 : 0;
+            pendingSurrogate = 0;
+        }
+        for (; i < count; i++) {
+            c = buf[i];
+            if (c < 0x80) {
+                bytes[n++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[n++] = (byte) (0xc0 | (c >> 6));
+                bytes[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                if (i + 1 == count) {
+                    // the low surrogate comes with the next flush
+                    pendingSurrogate = c;
+                    break;
+                }
+                n = encodeCodePoint(c, buf[i + 1], n);
+                if (Character.isLowSurrogate(buf[i + 1])) {
+                    i++;
+                }
+            } else if (Character.isLowSurrogate(c)) {
+                bytes[n++] = '?';
+            } else {
+                bytes[n++] = (byte) (0xe0 | (c >> 12));
+                bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        out.write(bytes, 0, n);
+    }
+
+    /**
+     * encodes a surrogate pair, or '?' for a lone high surrogate as String.getBytes does
+     */
+    private int encodeCodePoint(char high, char low, int n) {
+        if (!Character.isLowSurrogate(low)) {
+            bytes[n++] = '?';
+            return n;
+        }
+        int cp = Character.toCodePoint(high, low);
+        bytes[n++] = (byte) (0xf0 | (cp >> 18));
+        bytes[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        bytes[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        bytes[n++] = (byte) (0x80 | (cp & 0x3f));
+        return n;
+    }
+}
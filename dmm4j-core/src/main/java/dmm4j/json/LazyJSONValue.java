@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.json;
+
+import java.nio.charset.Charset;
+
+/**
+ * Placeholder for a nested object or array which has not been parsed yet.<br>
+ * It keeps the byte range of the value in the response body. {@link JSONObject} and
+ * {@link JSONArray} replace it with the parsed value the first time it is read, and the parsed
+ * value keeps its own nested values lazy in turn.
+ *
+ * @author nikuyoshi
+ */
+final class LazyJSONValue {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] bytes;
+    private final int start;
+    private final int end;
+    private final boolean compact;
+
+    LazyJSONValue(byte[] bytes, int start, int end, boolean compact) {
+        this.bytes = bytes;
+        this.start = start;
+        this.end = end;
+        this.compact = compact;
+    }
+
+    /**
+     * @return the parsed JSONObject or JSONArray
+     * @throws IllegalStateException if the value turns out to be malformed
+     */
+    Object materialize() {
+        try {
+            return new UTF8JSONParser(bytes, start, end, compact).nextValue();
+        } catch (JSONException jsone) {
+            throw new IllegalStateException("Malformed JSON value: " + jsone.getMessage(), jsone);
+        }
+    }
+
+    /**
+     * @return the JSON text of the value as received
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, start, end - start, UTF_8);
+    }
+}
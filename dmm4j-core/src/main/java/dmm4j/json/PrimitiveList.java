@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.json;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * List keeping numbers unboxed in tagged slots.<br>
+ * Each element is either an object, or an int, long or double stored as raw bits next to a tag,
+ * so parsing and the typed getters of {@link JSONArray} never box. {@link #get(int)} boxes on
+ * demand into the same types {@link JSONObject#stringToValue(String)} returns. The tag helpers are
+ * shared with {@link CompactMap}.
+ *
+ * @author nikuyoshi
+ */
+final class PrimitiveList extends AbstractList<Object> implements RandomAccess {
+    static final byte OBJECT = 0;
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+
+    private static final Object[] EMPTY_VALUES = new Object[0];
+
+    private Object[] values;
+    /**
+     * tags and raw bits, allocated with the first number
+     */
+    private byte[] tags = null;
+    private long[] bits = null;
+    private int size = 0;
+
+    PrimitiveList() {
+        values = EMPTY_VALUES;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(int index) {
+        checkIndex(index);
+        return tags == null || tags[index] == OBJECT ? values[index] : box(tags[index], bits[index]);
+    }
+
+    @Override
+    public Object set(int index, Object element) {
+        checkIndex(index);
+        Object old = get(index);
+        values[index] = element;
+        if (tags != null) {
+            tags[index] = OBJECT;
+        }
+        return old;
+    }
+
+    @Override
+    public void add(int index, Object element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        makeRoom(index);
+        values[index] = element;
+    }
+
+    @Override
+    public Object remove(int index) {
+        checkIndex(index);
+        Object old = get(index);
+        int moved = size - index - 1;
+        System.arraycopy(values, index + 1, values, index, moved);
+        if (tags != null) {
+            System.arraycopy(tags, index + 1, tags, index, moved);
+            System.arraycopy(bits, index + 1, bits, index, moved);
+            tags[size - 1] = OBJECT;
+        }
+        values[--size] = null;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * appends an integral number
+     */
+    void addLong(long value) {
+        makeRoom(size);
+        setBits(size - 1, value == (int) value ? INT : LONG, value);
+    }
+
+    void addDouble(double value) {
+        makeRoom(size);
+        setBits(size - 1, DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * appends a number given as a tag and raw bits
+     */
+    void addNumber(byte tag, long raw) {
+        makeRoom(size);
+        setBits(size - 1, tag, raw);
+    }
+
+    /**
+     * @return whether the element is an unboxed number
+     */
+    boolean isNumber(int index) {
+        checkIndex(index);
+        return tags != null && tags[index] != OBJECT;
+    }
+
+    long longAt(int index) {
+        return asLong(tags[index], bits[index]);
+    }
+
+    double doubleAt(int index) {
+        return asDouble(tags[index], bits[index]);
+    }
+
+    /**
+     * drops unused capacity once the list is fully built
+     */
+    void trimToSize() {
+        if (size < values.length) {
+            Object[] newValues = new Object[size];
+            System.arraycopy(values, 0, newValues, 0, size);
+            values = newValues;
+            if (tags != null) {
+                byte[] newTags = new byte[size];
+                long[] newBits = new long[size];
+                System.arraycopy(tags, 0, newTags, 0, size);
+                System.arraycopy(bits, 0, newBits, 0, size);
+                tags = newTags;
+                bits = newBits;
+            }
+        }
+    }
+
+    private void setBits(int index, byte tag, long raw) {
+        if (tags == null) {
+            tags = new byte[values.length];
+            bits = new long[values.length];
+        }
+        tags[index] = tag;
+        bits[index] = raw;
+    }
+
+    /**
+     * opens a slot at index, holding null
+     */
+    private void makeRoom(int index) {
+        if (size == values.length) {
+            int capacity = Math.max(4, size + (size >> 1));
+            Object[] newValues = new Object[capacity];
+            System.arraycopy(values, 0, newValues, 0, size);
+            values = newValues;
+            if (tags != null) {
+                byte[] newTags = new byte[capacity];
+                long[] newBits = new long[capacity];
+                System.arraycopy(tags, 0, newTags, 0, size);
+                System.arraycopy(bits, 0, newBits, 0, size);
+                tags = newTags;
+                bits = newBits;
+            }
+        }
+        int moved = size - index;
+        if (moved > 0) {
+            System.arraycopy(values, index, values, index + 1, moved);
+            if (tags != null) {
+                System.arraycopy(tags, index, tags, index + 1, moved);
+                System.arraycopy(bits, index, bits, index + 1, moved);
+            }
+        }
+        values[index] = null;
+        if (tags != null) {
+            tags[index] = OBJECT;
+        }
+        size++;
+        modCount++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    static Object box(byte tag, long raw) {
+        switch (tag) {
+            case INT:
+                return Integer.valueOf((int) raw);
+            case LONG:
+                return Long.valueOf(raw);
+            default:
+                return Double.valueOf(Double.longBitsToDouble(raw));
+        }
+    }
+
+    static long asLong(byte tag, long raw) {
+        return tag == DOUBLE ? (long) Double.longBitsToDouble(raw) : raw;
+    }
+
+    static double asDouble(byte tag, long raw) {
+        return tag == DOUBLE ? Double.longBitsToDouble(raw) : (double) raw;
+    }
+}
@@ -0,0 +1,652 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Parses UTF-8 encoded JSON text straight from bytes.<br>
+ * The structure, names and numbers are scanned as bytes, so nothing goes through an
+ * InputStreamReader; only the contents of strings are decoded, and strings made of ASCII only
+ * take the cheaper single byte path. Values are built as {@link JSONObject}, {@link JSONArray},
+ * String, Integer, Long, Double, Boolean or {@link JSONObject#NULL}, as with {@link JSONTokener}.
+ * Unlike JSONTokener, names have to be quoted and only standard separators are accepted.<br>
+ * Names are looked up in a dictionary shared by all parsers, so the same key String instance is
+ * reused across objects and responses instead of being decoded again. With compact objects
+ * enabled, objects are kept in flat arrays rather than a HashMap, which suits large result sets
+ * held in memory.<br>
+ * In lazy mode the whole input is read first and nested objects and arrays are only scanned for
+ * their extent; they are parsed when first read from the enclosing JSONObject or JSONArray.
+ *
+ * @author nikuyoshi
+ */
+public final class UTF8JSONParser {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int MAX_NAME_LENGTH = 64;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    /**
+     * names seen so far, replaced on collision; entries are immutable so racy updates are safe
+     */
+    private static final Name[] NAMES = new Name[2048];
+
+    private static final class Name {
+        final byte[] bytes;
+        final String string;
+
+        Name(byte[] bytes, String string) {
+            this.bytes = bytes;
+            this.string = string;
+        }
+    }
+
+    private final InputStream in;
+    private final boolean compact;
+    private final boolean lazy;
+    /**
+     * whether the whole input is in the buffer
+     */
+    private boolean loaded;
+    private byte[] buf;
+    private int pos = 0;
+    private int limit = 0;
+    /**
+     * start of the token being read, kept in the buffer by fill(), or -1
+     */
+    private int mark = -1;
+    /**
+     * number of bytes dropped from the head of the buffer so far
+     */
+    private long offset = 0;
+    /**
+     * result of readLiteral()
+     */
+    private Object literal;
+    private long literalBits;
+
+    /**
+     * @param in UTF-8 encoded JSON text
+     */
+    public UTF8JSONParser(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * @param in      UTF-8 encoded JSON text
+     * @param compact whether to keep objects in compact maps
+     */
+    public UTF8JSONParser(InputStream in, boolean compact) {
+        this(in, DEFAULT_BUFFER_SIZE, compact);
+    }
+
+    /**
+     * @param in         UTF-8 encoded JSON text
+     * @param bufferSize initial size of the byte buffer, which grows for longer tokens
+     * @param compact    whether to keep objects in compact maps
+     */
+    public UTF8JSONParser(InputStream in, int bufferSize, boolean compact) {
+        this(in, bufferSize, compact, false);
+    }
+
+    /**
+     * @param in      UTF-8 encoded JSON text
+     * @param compact whether to keep objects in compact maps
+     * @param lazy    whether to parse nested objects and arrays on first access
+     */
+    public UTF8JSONParser(InputStream in, boolean compact, boolean lazy) {
+        this(in, DEFAULT_BUFFER_SIZE, compact, lazy);
+    }
+
+    private UTF8JSONParser(InputStream in, int bufferSize, boolean compact, boolean lazy) {
+        this.in = in;
+        this.buf = new byte[Math.max(16, bufferSize)];
+        this.compact = compact;
+        this.lazy = lazy;
+        this.loaded = false;
+    }
+
+    /**
+     * parses a value kept by {@link LazyJSONValue}, keeping its nested values lazy
+     */
+    UTF8JSONParser(byte[] bytes, int start, int end, boolean compact) {
+        this.in = null;
+        this.buf = bytes;
+        this.pos = start;
+        this.limit = end;
+        this.compact = compact;
+        this.lazy = true;
+        this.loaded = true;
+    }
+
+    /**
+     * @return the next value
+     * @throws JSONException on malformed input or I/O failure
+     */
+    public Object nextValue() throws JSONException {
+        load();
+        int b = nextClean();
+        switch (b) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case -1:
+                throw syntaxError("Missing value");
+            default:
+                pos--;
+                byte tag = readLiteral();
+                return tag == PrimitiveList.OBJECT ? literal : PrimitiveList.box(tag, literalBits);
+        }
+    }
+
+    /**
+     * @return the next value, which has to be an object
+     * @throws JSONException on malformed input or I/O failure
+     */
+    public JSONObject nextObject() throws JSONException {
+        load();
+        if (nextClean() != '{') {
+            throw syntaxError("A JSONObject text must begin with '{'");
+        }
+        return readObject();
+    }
+
+    /**
+     * @return the next value, which has to be an array
+     * @throws JSONException on malformed input or I/O failure
+     */
+    public JSONArray nextArray() throws JSONException {
+        load();
+        if (nextClean() != '[') {
+            throw syntaxError("A JSONArray text must start with '['");
+        }
+        return readArray();
+    }
+
+    /**
+     * Make a JSONException to signal a syntax error.
+     *
+     * @param message The error message.
+     * @return a JSONException including the byte offset
+     */
+    public JSONException syntaxError(String message) {
+        return new JSONException(message + toString());
+    }
+
+    @Override
+    public String toString() {
+        return " at byte " + (offset + pos);
+    }
+
+    private JSONObject readObject() throws JSONException {
+        CompactMap map = compact ? new CompactMap() : null;
+        JSONObject object = compact ? new JSONObject(map) : new JSONObject();
+        int b = nextClean();
+        if (b == '}') {
+            if (compact) {
+                map.trimToSize();
+            }
+            return object;
+        }
+        for (; ; ) {
+            if (b != '"') {
+                throw syntaxError("Expected a name");
+            }
+            String key = readName();
+            if (nextClean() != ':') {
+                throw syntaxError("Expected a ':' after a key");
+            }
+            if (compact && isLiteralStart(peekValue())) {
+                byte tag = readLiteral();
+                if (map.containsKey(key)) {
+                    throw new JSONException("Duplicate key \"" + key + "\"");
+                }
+                if (tag == PrimitiveList.OBJECT) {
+                    map.put(key, literal);
+                } else {
+                    map.putNumber(key, tag, literalBits);
+                }
+            } else {
+                object.putOnce(key, readNested());
+            }
+            b = nextClean();
+            if (b == '}') {
+                if (compact) {
+                    map.trimToSize();
+                }
+                return object;
+            }
+            if (b != ',') {
+                throw syntaxError("Expected a ',' or '}'");
+            }
+            b = nextClean();
+        }
+    }
+
+    private JSONArray readArray() throws JSONException {
+        PrimitiveList list = compact ? new PrimitiveList() : null;
+        JSONArray array = compact ? new JSONArray(list) : new JSONArray();
+        int first = nextClean();
+        if (first == ']') {
+            return array;
+        }
+        if (first == -1) {
+            throw syntaxError("Unterminated array");
+        }
+        pos--;
+        for (; ; ) {
+            if (compact && isLiteralStart(peekValue())) {
+                byte tag = readLiteral();
+                if (tag == PrimitiveList.OBJECT) {
+                    list.add(literal);
+                } else {
+                    list.addNumber(tag, literalBits);
+                }
+            } else {
+                array.put(readNested());
+            }
+            int b = nextClean();
+            if (b == ']') {
+                if (compact) {
+                    list.trimToSize();
+                }
+                return array;
+            }
+            if (b != ',') {
+                throw syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * reads the rest of a string whose opening quote has been consumed
+     */
+    private String readString() throws JSONException {
+        StringBuilder sb = null;
+        boolean ascii = true;
+        mark = pos;
+        for (; ; ) {
+            while (pos < limit) {
+                byte b = buf[pos];
+                if (b == '"') {
+                    String string = decode(mark, pos - mark, ascii);
+                    if (sb != null) {
+                        string = sb.append(string).toString();
+                    }
+                    pos++;
+                    mark = -1;
+                    return string;
+                }
+                if (b == '\\') {
+                    if (sb == null) {
+                        sb = new StringBuilder(pos - mark + 16);
+                    }
+                    sb.append(decode(mark, pos - mark, ascii));
+                    pos++;
+                    sb.append(readEscape());
+                    ascii = true;
+                    mark = pos;
+                } else if (b == '\n' || b == '\r') {
+                    throw syntaxError("Unterminated string");
+                } else {
+                    if (b < 0) {
+                        ascii = false;
+                    }
+                    pos++;
+                }
+            }
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * reads a name, taking the String from the shared dictionary when possible
+     */
+    private String readName() throws JSONException {
+        mark = pos;
+        int i = pos;
+        int hash = 0;
+        boolean ascii = true;
+        for (; ; ) {
+            while (i < limit) {
+                byte b = buf[i];
+                if (b == '"') {
+                    int length = i - mark;
+                    if (length > MAX_NAME_LENGTH) {
+                        return readString();
+                    }
+                    int slot = (hash ^ (hash >>> 16)) & (NAMES.length - 1);
+                    Name name = NAMES[slot];
+                    if (name == null || !matches(name.bytes, mark, length)) {
+                        name = new Name(Arrays.copyOfRange(buf, mark, i),
+                                decode(mark, length, ascii));
+                        NAMES[slot] = name;
+                    }
+                    pos = i + 1;
+                    mark = -1;
+                    return name.string;
+                }
+                if (b == '\\' || b == '\n' || b == '\r') {
+                    return readString();
+                }
+                if (b < 0) {
+                    ascii = false;
+                }
+                hash = 31 * hash + b;
+                i++;
+            }
+            int dropped = mark;
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            i -= dropped - mark;
+        }
+    }
+
+    private boolean matches(byte[] bytes, int start, int length) {
+        if (bytes.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int start, int length, boolean ascii) {
+        if (length == 0) {
+            return "";
+        }
+        // the bytes of a multi-byte sequence are all >= 0x80, so a token never splits one
+        return new String(buf, start, length, ascii ? ISO_8859_1 : UTF_8);
+    }
+
+    private char readEscape() throws JSONException {
+        int b = read();
+        switch (b) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Illegal escape.");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return (char) b;
+            default:
+                throw syntaxError("Illegal escape.");
+        }
+    }
+
+    /**
+     * reads a value inside an object or array, leaving it unparsed in lazy mode
+     */
+    private Object readNested() throws JSONException {
+        if (lazy) {
+            int b = nextClean();
+            if (b == '{' || b == '[') {
+                int start = pos - 1;
+                skipContainer();
+                return new LazyJSONValue(buf, start, pos, compact);
+            }
+            if (b != -1) {
+                pos--;
+            }
+        }
+        return nextValue();
+    }
+
+    /**
+     * skips to the end of the object or array whose opening bracket has been consumed
+     */
+    private void skipContainer() throws JSONException {
+        int depth = 1;
+        while (pos < limit) {
+            byte b = buf[pos++];
+            if (b == '"') {
+                for (; ; ) {
+                    if (pos >= limit) {
+                        throw syntaxError("Unterminated string");
+                    }
+                    byte c = buf[pos++];
+                    if (c == '\\') {
+                        pos++;
+                    } else if (c == '"') {
+                        break;
+                    }
+                }
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                return;
+            }
+        }
+        throw syntaxError("Unterminated value");
+    }
+
+    /**
+     * reads the whole input into the buffer in lazy mode, as nested values keep pointing into it
+     */
+    private void load() throws JSONException {
+        if (lazy && !loaded) {
+            mark = pos;
+            while (fill()) {
+                // keep reading
+            }
+            mark = -1;
+            loaded = true;
+        }
+    }
+
+    /**
+     * @return the first byte of the next value, which is left unread
+     */
+    private int peekValue() throws JSONException {
+        int b = nextClean();
+        if (b == -1) {
+            throw syntaxError("Missing value");
+        }
+        pos--;
+        return b;
+    }
+
+    private static boolean isLiteralStart(int b) {
+        return b != '{' && b != '[' && b != '"' && b != -1;
+    }
+
+    /**
+     * Reads a number, one of true, false and null, or other unquoted text.
+     *
+     * @return the tag of the value; numbers are left in literalBits, anything else in literal
+     */
+    private byte readLiteral() throws JSONException {
+        mark = pos;
+        for (; ; ) {
+            while (pos < limit && !isDelimiter(buf[pos])) {
+                pos++;
+            }
+            if (pos < limit || !fill()) {
+                break;
+            }
+        }
+        int start = mark;
+        int length = pos - start;
+        mark = -1;
+        if (length == 0) {
+            throw syntaxError("Missing value");
+        }
+        byte first = buf[start];
+        if (first == 't' && matches(start, length, "true")) {
+            literal = Boolean.TRUE;
+            return PrimitiveList.OBJECT;
+        }
+        if (first == 'f' && matches(start, length, "false")) {
+            literal = Boolean.FALSE;
+            return PrimitiveList.OBJECT;
+        }
+        if (first == 'n' && matches(start, length, "null")) {
+            literal = JSONObject.NULL;
+            return PrimitiveList.OBJECT;
+        }
+        int end = start + length;
+        boolean negative = first == '-';
+        int i = negative ? start + 1 : start;
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < end; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else if (b == '.' && fraction < 0 && digits > 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digits > 0) {
+            if (fraction < 0 && digits <= 18) {
+                // up to 18 digits always fit in a long
+                literalBits = negative ? -mantissa : mantissa;
+                return literalBits == (int) literalBits ? PrimitiveList.INT : PrimitiveList.LONG;
+            }
+            if (fraction > 0 && digits <= 15) {
+                // both operands are exact, so the division is correctly rounded
+                double value = mantissa / POWERS_OF_TEN[fraction];
+                literalBits = Double.doubleToRawLongBits(negative ? -value : value);
+                return PrimitiveList.DOUBLE;
+            }
+        }
+        // exponents and anything else are left to the same conversion as JSONTokener
+        literal = JSONObject.stringToValue(new String(buf, start, length, UTF_8));
+        return PrimitiveList.OBJECT;
+    }
+
+    private boolean matches(int start, int length, String literal) {
+        if (length != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf[start + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == ']' || b == '}' || b == ':' || b == ' ' || b == '\n' || b == '\r'
+                || b == '\t' || b == '"' || b == '[' || b == '{';
+    }
+
+    /**
+     * @return the next byte which is not whitespace, or -1 at the end of the input
+     */
+    private int nextClean() throws JSONException {
+        for (; ; ) {
+            while (pos < limit) {
+                byte b = buf[pos++];
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                    return b;
+                }
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the next byte, or -1 at the end of the input
+     */
+    private int read() throws JSONException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    /**
+     * Reads more bytes, dropping the ones before the mark (or pos) and growing the buffer when the
+     * token being read fills it.
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws JSONException {
+        if (loaded) {
+            return false;
+        }
+        int keep = mark >= 0 ? mark : pos;
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, limit - keep);
+            offset += keep;
+            pos -= keep;
+            limit -= keep;
+            if (mark >= 0) {
+                mark = 0;
+            }
+        } else if (limit == buf.length) {
+            byte[] newBuf = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, newBuf, 0, limit);
+            buf = newBuf;
+        }
+        try {
+            int n;
+            while ((n = in.read(buf, limit, buf.length - limit)) == 0) {
+                // try again
+            }
+            if (n == -1) {
+                return false;
+            }
+            limit += n;
+            return true;
+        } catch (IOException ioe) {
+            throw new JSONException(ioe);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2015 Hiroki Uchida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package dmm4j.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shared pool of byte arrays, char arrays and StringBuilders used by the HTTP and JSON layers.<br>
+ * Arrays come in power of two size classes from {@link #MIN_SIZE} to {@link #MAX_SIZE}; larger
+ * requests are allocated and dropped as usual. Pooled buffers are kept in a fixed number of
+ * stripes picked by thread id, each holding a few buffers per size class, so the pool is bounded
+ * and works the same for platform and virtual threads. Taking and returning a buffer is a single
+ * atomic swap on a slot without locks.
+ * <pre>
+ * byte[] buf = BufferPool.takeBytes(8192);
+ * try {
+ *   ...
+ * } finally {
+ *   BufferPool.release(buf);
+ * }
+ * </pre>
+ * A buffer must not be used after it is released.
+ *
+ * @author nikuyoshi
+ */
+public final class BufferPool {
+  public static final int MIN_SIZE = 1024;
+  public static final int MAX_SIZE = 64 * 1024;
+
+  private static final int MIN_SHIFT = 10;
+  private static final int SIZE_CLASSES = 7;
+  private static final int SLOTS_PER_CLASS = 4;
+  private static final int STRIPES = stripes();
+  private static final int STRIPE_MASK = STRIPES - 1;
+
+  /**
+   * one slot array per kind, indexed by (stripe * SIZE_CLASSES + size class) * SLOTS_PER_CLASS
+   */
+  private static final AtomicReferenceArray<byte[]> BYTES =
+      new AtomicReferenceArray<byte[]>(STRIPES * SIZE_CLASSES * SLOTS_PER_CLASS);
+  private static final AtomicReferenceArray<char[]> CHARS =
+      new AtomicReferenceArray<char[]>(STRIPES * SIZE_CLASSES * SLOTS_PER_CLASS);
+  private static final AtomicReferenceArray<StringBuilder> BUILDERS =
+      new AtomicReferenceArray<StringBuilder>(STRIPES * SLOTS_PER_CLASS);
+
+  private static final AtomicLong allocatedCount = new AtomicLong();
+  private static final AtomicLong reusedCount = new AtomicLong();
+  private static final AtomicLong discardedCount = new AtomicLong();
+
+  private BufferPool() {
+    // should never be instantiated
+    throw new AssertionError();
+  }
+
+  /**
+   * @param minSize required length
+   * @return array of at least minSize bytes, with arbitrary content
+   */
+  public static byte[] takeBytes(int minSize) {
+    int sizeClass = sizeClass(minSize);
+    if (sizeClass < 0) {
+      allocatedCount.incrementAndGet();
+      return new byte[minSize];
+    }
+    int base = slotBase(sizeClass);
+    for (int i = 0; i < SLOTS_PER_CLASS; i++) {
+      byte[] buf = BYTES.getAndSet(base + i, null);
+      if (buf != null) {
+        reusedCount.incrementAndGet();
+        return buf;
+      }
+    }
+    allocatedCount.incrementAndGet();
+    return new byte[MIN_SIZE << sizeClass];
+  }
+
+  /**
+   * Returns an array taken with {@link #takeBytes(int)} to the pool.
+   *
+   * @param buf the array, ignored if null or not of a pooled size
+   */
+  public static void release(byte[] buf) {
+    int sizeClass = buf == null ? -1 : exactSizeClass(buf.length);
+    if (sizeClass < 0) {
+      return;
+    }
+    int base = slotBase(sizeClass);
+    for (int i = 0; i < SLOTS_PER_CLASS; i++) {
+      if (BYTES.compareAndSet(base + i, null, buf)) {
+        return;
+      }
+    }
+    discardedCount.incrementAndGet();
+  }
+
+  /**
+   * @param minSize required length
+   * @return array of at least minSize chars, with arbitrary content
+   */
+  public static char[] takeChars(int minSize) {
+    int sizeClass = sizeClass(minSize);
+    if (sizeClass < 0) {
+      allocatedCount.incrementAndGet();
+      return new char[minSize];
+    }
+    int base = slotBase(sizeClass);
+    for (int i = 0; i < SLOTS_PER_CLASS; i++) {
+      char[] buf = CHARS.getAndSet(base + i, null);
+      if (buf != null) {
+        reusedCount.incrementAndGet();
+        return buf;
+      }
+    }
+    allocatedCount.incrementAndGet();
+    return new char[MIN_SIZE << sizeClass];
+  }
+
+  /**
+   * Returns an array taken with {@link #takeChars(int)} to the pool.
+   *
+   * @param buf the array, ignored if null or not of a pooled size
+   */
+  public static void release(char[] buf) {
+    int sizeClass = buf == null ? -1 : exactSizeClass(buf.length);
+    if (sizeClass < 0) {
+      return;
+    }
+    int base = slotBase(sizeClass);
+    for (int i = 0; i < SLOTS_PER_CLASS; i++) {
+      if (CHARS.compareAndSet(base + i, null, buf)) {
+        return;
+      }
+    }
+    discardedCount.incrementAndGet();
+  }
+
+  /**
+   * @return an empty StringBuilder
+   */
+  public static StringBuilder takeBuilder() {
+    int base = stripe() * SLOTS_PER_CLASS;
+    for (int i = 0; i < SLOTS_PER_CLASS; i++) {
+      StringBuilder sb = BUILDERS.getAndSet(base + i, null);
+      if (sb != null) {
+        reusedCount.incrementAndGet();
+        return sb;
+      }
+    }
+    allocatedCount.incrementAndGet();
+    return new StringBuilder(256);
+  }
+
+  /**
+   * Returns a builder taken with {@link #takeBuilder()} to the pool, unless it has grown beyond
+   * {@link #MAX_SIZE} chars.
+   *
+   * @param sb the builder, ignored if null
+   */
+  public static void release(StringBuilder sb) {
+    if (sb == null) {
+      return;
+    }
+    if (sb.capacity() > MAX_SIZE) {
+      discardedCount.incrementAndGet();
+      return;
+    }
+    sb.setLength(0);
+    int base = stripe() * SLOTS_PER_CLASS;
+    for (int i = 0; i < SLOTS_PER_CLASS; i++) {
+      if (BUILDERS.compareAndSet(base + i, null, sb)) {
+        return;
+      }
+    }
+    discardedCount.incrementAndGet();
+  }
+
+  /**
+   * @return number of buffers allocated because none was pooled or the size was not pooled
+   */
+  public static long getAllocatedCount() {
+    return allocatedCount.get();
+  }
+
+  /**
+   * @return number of buffers handed out again from the pool
+   */
+  public static long getReusedCount() {
+    return reusedCount.get();
+  }
+
+  /**
+   * @return number of released buffers dropped because their slots were full or they were too
+   *         large
+   */
+  public static long getDiscardedCount() {
+    return discardedCount.get();
+  }
+
+  /**
+   * @return the smallest size class holding minSize, or -1 if minSize is too large to be pooled
+   */
+  private static int sizeClass(int minSize) {
+    if (minSize > MAX_SIZE) {
+      return -1;
+    }
+    if (minSize <= MIN_SIZE) {
+      return 0;
+    }
+    return 32 - Integer.numberOfLeadingZeros(minSize - 1) - MIN_SHIFT;
+  }
+
+  /**
+   * @return the size class of an array handed out by the pool, or -1
+   */
+  private static int exactSizeClass(int length) {
+    if (length < MIN_SIZE || length > MAX_SIZE || Integer.bitCount(length) != 1) {
+      return -1;
+    }
+    return Integer.numberOfTrailingZeros(length) - MIN_SHIFT;
+  }
+
+  private static int slotBase(int sizeClass) {
+    return (stripe() * SIZE_CLASSES + sizeClass) * SLOTS_PER_CLASS;
+  }
+
+  private static int stripe() {
+    long id = Thread.currentThread().getId();
+    return (int) (id ^ (id >>> 16)) & STRIPE_MASK;
+  }
+
+  private static int stripes() {
+    int processors = Runtime.getRuntime().availableProcessors();
+    return Integer.highestOneBit(Math.max(1, processors * 2 - 1)) << 1;
+  }
+}